@@ -0,0 +1,21 @@
+package com.khiem.event.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+// Published by identity-service when a token is invalidated (logout, refresh)
+public class TokenRevokedEvent {
+    String jwtId;
+    Date expiryTime;
+}
@@ -0,0 +1,136 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.dto.AccessLogRecord;
+import com.khiem.gateway.service.AccessLogWriter;
+import com.khiem.gateway.service.TokenDigest;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Hands one {@link AccessLogRecord} per request to {@link AccessLogWriter}. Errors (4xx, 5xx, failed
+ * exchanges) and requests slower than {@code app.access-log.slow-threshold} are always logged, the rest
+ * only at {@code app.access-log.sample-rate}. Nothing is built for requests that aren't logged.
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class AccessLogFilter implements GlobalFilter, Ordered {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    AccessLogWriter accessLogWriter;
+
+    @Value("${app.access-log.enabled:true}")
+    @NonFinal
+    boolean enabled;
+
+    @Value("${app.access-log.sample-rate:0.01}")
+    @NonFinal
+    double sampleRate;
+
+    @Value("${app.access-log.slow-threshold:1s}")
+    @NonFinal
+    Duration slowThreshold;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!enabled)
+            return chain.filter(exchange);
+
+        long start = System.nanoTime();
+        ByteCountingResponse response = new ByteCountingResponse(exchange.getResponse());
+        return chain.filter(exchange.mutate().response(response).build())
+                .doFinally(signal -> log(exchange, response, signal, System.nanoTime() - start));
+    }
+
+    @Override
+    public int getOrder() {
+        return FilterOrder.ACCESS_LOG;
+    }
+
+    private void log(ServerWebExchange exchange, ByteCountingResponse response, SignalType signal, long durationNanos) {
+        HttpStatusCode status = response.getStatusCode();
+        String reason;
+        if (signal == SignalType.ON_ERROR || (status != null && status.value() >= 400))
+            reason = "error";
+        else if (durationNanos >= slowThreshold.toNanos())
+            reason = "slow";
+        else if (ThreadLocalRandom.current().nextDouble() < sampleRate)
+            reason = "sampled";
+        else
+            return;
+
+        ServerHttpRequest request = exchange.getRequest();
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        Long upstreamNanos = exchange.getAttribute(UpstreamTimingFilter.UPSTREAM_LATENCY_ATTRIBUTE);
+        long contentLength = request.getHeaders().getContentLength();
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+
+        accessLogWriter.submit(AccessLogRecord.builder()
+                .timestamp(Instant.now())
+                .method(request.getMethod().name())
+                .path(request.getURI().getRawPath())
+                .routeId(route != null ? route.getId() : null)
+                .status(status != null ? status.value() : null)
+                .durationMs(durationNanos / NANOS_PER_MILLI)
+                .upstreamMs(upstreamNanos != null ? upstreamNanos / NANOS_PER_MILLI : null)
+                .bytesIn(contentLength >= 0 ? contentLength : null)
+                .bytesOut(response.bytesWritten)
+                .clientIp(remoteAddress != null ? remoteAddress.getHostString() : null)
+                .tokenFingerprint(tokenFingerprint(request))
+                .reason(reason)
+                .build());
+    }
+
+    private static String tokenFingerprint(ServerHttpRequest request) {
+        String authorization = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || authorization.isBlank())
+            return null;
+        return TokenDigest.of(authorization.replace("Bearer ", "")).substring(0, 16);
+    }
+
+    private static final class ByteCountingResponse extends ServerHttpResponseDecorator {
+        // Only written from the response's own write path, read once the exchange has completed
+        private volatile long bytesWritten;
+
+        private ByteCountingResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(Flux.from(body).doOnNext(buffer -> bytesWritten += buffer.readableByteCount()));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return super.writeAndFlushWith(Flux.from(body).map(chunk ->
+                    Flux.from(chunk).doOnNext(buffer -> bytesWritten += buffer.readableByteCount())));
+        }
+    }
+}
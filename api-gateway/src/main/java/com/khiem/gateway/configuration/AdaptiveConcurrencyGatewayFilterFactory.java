@@ -0,0 +1,113 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.DispatcherHandler;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caps in-flight requests per route with an {@link AdaptiveConcurrencyLimiter}. Requests over the limit
+ * are shed immediately to {@code /fallback} instead of queueing in Netty behind a slow downstream.
+ */
+@Component
+public class AdaptiveConcurrencyGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<AdaptiveConcurrencyGatewayFilterFactory.Config> {
+    public static final String FALLBACK_PATH = "/fallback";
+
+    private final ObjectProvider<DispatcherHandler> dispatcherHandler;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyGatewayFilterFactory(ObjectProvider<DispatcherHandler> dispatcherHandler,
+                                                   MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.dispatcherHandler = dispatcherHandler;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String routeId = config.getRouteId();
+        AdaptiveConcurrencyLimiter limiter = limiters.computeIfAbsent(routeId, id -> register(id, config));
+        Counter rejected = Counter.builder("gateway.concurrency.rejected")
+                .description("Requests shed because the route was at its concurrency limit")
+                .tag("route", routeId)
+                .register(meterRegistry);
+
+        return (exchange, chain) -> {
+            if (!limiter.tryAcquire()) {
+                rejected.increment();
+                return fallback(exchange);
+            }
+
+            int inFlightAtStart = limiter.getInFlight();
+            long start = System.nanoTime();
+            return chain.filter(exchange).doFinally(signal -> {
+                limiter.release();
+                if (signal == SignalType.CANCEL)
+                    return;
+
+                HttpStatusCode status = exchange.getResponse().getStatusCode();
+                boolean dropped = signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+                limiter.onSample(System.nanoTime() - start, inFlightAtStart, dropped);
+            });
+        };
+    }
+
+    private Mono<Void> fallback(ServerWebExchange exchange) {
+        ServerWebExchange forwarded = exchange.mutate()
+                .request(exchange.getRequest().mutate().path(FALLBACK_PATH).build())
+                .build();
+        return dispatcherHandler.getObject().handle(forwarded);
+    }
+
+    private AdaptiveConcurrencyLimiter register(String routeId, Config config) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config.getInitialLimit(),
+                config.getMinLimit(), config.getMaxLimit(), config.getTolerance(), config.getSmoothing(),
+                config.getLongWindow());
+
+        Gauge.builder("gateway.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive concurrency limit")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.in-flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Requests currently admitted to the route")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        return limiter;
+    }
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Config implements HasRouteId {
+        String routeId;
+        int initialLimit = 20;
+        int minLimit = 4;
+        int maxLimit = 500;
+
+        // How much the current RTT may exceed the long-term RTT before the limit shrinks
+        double tolerance = 2.0;
+
+        // Weight of each new limit estimate, lower is steadier
+        double smoothing = 0.2;
+
+        // Number of samples the long-term RTT averages over
+        int longWindow = 600;
+    }
+}
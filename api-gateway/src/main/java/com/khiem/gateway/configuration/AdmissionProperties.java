@@ -0,0 +1,47 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.PriorityAdmission.Priority;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.admission")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class AdmissionProperties {
+    boolean enabled = true;
+
+    // Requests in flight across all routes before new ones have to queue
+    int maxInFlight = 1000;
+
+    // Used by routes without a priority in their metadata
+    Priority defaultPriority = Priority.NORMAL;
+
+    Map<Priority, PriorityClass> classes = new EnumMap<>(Map.of(
+            Priority.CRITICAL, new PriorityClass(8, 1000, Duration.ofSeconds(2)),
+            Priority.NORMAL, new PriorityClass(4, 500, Duration.ofSeconds(1)),
+            Priority.BULK, new PriorityClass(1, 100, Duration.ofMillis(250))));
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class PriorityClass {
+        // Share of admissions while several classes are queued
+        int weight = 1;
+
+        // Requests of the class that may wait, more are rejected at once
+        int queueCapacity = 100;
+
+        Duration queueTimeout = Duration.ofSeconds(1);
+    }
+}
@@ -1,113 +1,121 @@
 package com.khiem.gateway.configuration;
 
-import com.khiem.gateway.dto.ApiResponse;
+import com.khiem.gateway.dto.VerifiedToken;
+import com.khiem.gateway.service.IdentityContextSigner;
 import com.khiem.gateway.service.IdentityService;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.netty.handler.codec.http.HttpResponseStatus;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
-import lombok.experimental.NonFinal;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.core.Ordered;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
-import org.springframework.util.CollectionUtils;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import java.util.Arrays;
-import java.util.List;
-
 @Component
-@Slf4j
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PACKAGE, makeFinal = true)
 public class AuthenticationFilter implements GlobalFilter, Ordered {
-    IdentityService identityService;
-    ObjectMapper objectMapper;
-
-    @NonFinal
-    private String[] publicEndpoints = {
-            "/identity/auth/.*",
-            "/identity/users/registration",
-            "/notification/email/send",
-            "/file/media/download/.*",
-            "/transaction.*",
-            "/statistics.*"
-    };
-
-    @Value("${app.api-prefix}")
-    @NonFinal
-    private String apiPrefix;
+    // Exchange attribute holding the VerifiedToken of an authenticated request
+    public static final String VERIFIED_TOKEN_ATTRIBUTE = AuthenticationFilter.class.getName() + ".verifiedToken";
 
-    @Override
-    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        log.info("Enter authentication filter....");
+    // Exchange attribute holding the nanoseconds spent verifying the token
+    public static final String AUTHENTICATION_LATENCY_ATTRIBUTE = AuthenticationFilter.class.getName() + ".latency";
 
-        if (isPublicEndpoint(exchange.getRequest()))
-            return chain.filter(exchange);
+    private static final String BEARER_PREFIX = "Bearer ";
 
-        String path = exchange.getRequest().getURI().getPath();
-        String method = exchange.getRequest().getMethod().name();
+    // Far above any token identity-service issues, longer headers are rejected without being parsed
+    private static final int MAX_TOKEN_LENGTH = 4096;
 
-        // Allow public access to GET /books
-        if (path.matches(apiPrefix + "/books.*") && method.equals("GET")) {
-            return chain.filter(exchange);
-        }
+    IdentityService identityService;
+    PublicEndpointMatcher publicEndpointMatcher;
+    IdentityContextSigner identityContextSigner;
+    ErrorResponses errorResponses;
 
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (publicEndpointMatcher.matches(exchange.getRequest()))
+            return chain.filter(withoutIdentityContext(exchange));
 
-        // Get token from authorization header
-        List<String> authHeader = exchange.getRequest().getHeaders().get(HttpHeaders.AUTHORIZATION);
-        if (CollectionUtils.isEmpty(authHeader))
+        // Missing or malformed tokens are rejected before any verification or call to identity-service
+        String token = bearerToken(exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+        if (token == null)
             return unauthenticated(exchange.getResponse());
 
-        String token = authHeader.getFirst().replace("Bearer ", "");
-        log.info("Token: {}", token);
-
-        return identityService.introspect(token).flatMap(introspectResponse -> {
-            if (introspectResponse.getResult().isValid())
-                return chain.filter(exchange);
-            else
-                return unauthenticated(exchange.getResponse());
-        }).onErrorResume(throwable -> unauthenticated(exchange.getResponse()));
+        long start = System.nanoTime();
+        return identityService.authenticate(token)
+                .map(verifiedToken -> {
+                    exchange.getAttributes().put(VERIFIED_TOKEN_ATTRIBUTE, verifiedToken);
+                    return true;
+                })
+                .defaultIfEmpty(false)
+                .flatMap(valid -> {
+                    exchange.getAttributes().put(AUTHENTICATION_LATENCY_ATTRIBUTE, System.nanoTime() - start);
+                    if (valid)
+                        return chain.filter(withIdentityContext(exchange, exchange.getAttribute(VERIFIED_TOKEN_ATTRIBUTE)));
+                    else
+                        return unauthenticated(exchange.getResponse());
+                }).onErrorResume(throwable -> {
+                    exchange.getAttributes().putIfAbsent(AUTHENTICATION_LATENCY_ATTRIBUTE, System.nanoTime() - start);
+                    return unauthenticated(exchange.getResponse());
+                });
     }
 
     @Override
     public int getOrder() {
-        return -1;
+        return FilterOrder.AUTHENTICATION;
     }
 
-    private boolean isPublicEndpoint(ServerHttpRequest request){
-        return Arrays.stream(publicEndpoints)
-                .anyMatch(s -> request.getURI().getPath().matches(apiPrefix + s));
+    // Downstream services trust the signed identity context, so one sent by the client must never pass through
+    ServerWebExchange withoutIdentityContext(ServerWebExchange exchange) {
+        if (!exchange.getRequest().getHeaders().containsKey(IdentityContextSigner.HEADER))
+            return exchange;
+
+        return exchange.mutate()
+                .request(request -> request.headers(headers -> headers.remove(IdentityContextSigner.HEADER)))
+                .build();
     }
 
-    Mono<Void> unauthenticated(ServerHttpResponse response){
-        ApiResponse<?> apiResponse = ApiResponse.builder()
-                .code(1401)
-                .message("Unauthenticated")
+    ServerWebExchange withIdentityContext(ServerWebExchange exchange, VerifiedToken verifiedToken) {
+        return exchange.mutate()
+                .request(request -> request.headers(headers ->
+                        headers.set(IdentityContextSigner.HEADER, identityContextSigner.sign(verifiedToken))))
                 .build();
+    }
 
-        String body = null;
-        try {
-            body = objectMapper.writeValueAsString(apiResponse);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+    Mono<Void> unauthenticated(ServerHttpResponse response){
+        return errorResponses.unauthenticated(response);
+    }
 
-        response.setStatusCode(HttpStatus.UNAUTHORIZED);
-        response.getHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+    // The token of a "Bearer" authorization header, null unless it has the shape of a compact JWS:
+    // three base64url parts separated by dots
+    public static String bearerToken(String authorization) {
+        if (authorization == null
+                || authorization.length() <= BEARER_PREFIX.length()
+                || authorization.length() > BEARER_PREFIX.length() + MAX_TOKEN_LENGTH
+                || !authorization.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length()))
+            return null;
+
+        int dots = 0;
+        char previous = '.';
+        for (int i = BEARER_PREFIX.length(); i < authorization.length(); i++) {
+            char c = authorization.charAt(i);
+            if (c == '.') {
+                if (previous == '.')
+                    return null;
+                dots++;
+            } else if (!isBase64Url(c)) {
+                return null;
+            }
+            previous = c;
+        }
+        return dots == 2 && previous != '.' ? authorization.substring(BEARER_PREFIX.length()) : null;
+    }
 
-        return response.writeWith(
-                Mono.just(response.bufferFactory().wrap(body.getBytes())));
+    private static boolean isBase64Url(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
     }
 }
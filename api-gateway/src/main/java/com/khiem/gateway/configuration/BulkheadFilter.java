@@ -0,0 +1,104 @@
+package com.khiem.gateway.configuration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.DispatcherHandler;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Semaphore bulkhead per downstream service, the host of the route URI, so one slow service can only
+ * hold {@code app.resilience.bulkheads.<service>} requests and the rest of the gateway keeps its
+ * capacity. Requests over the cap are answered by the route's fallback without being counted as
+ * failures by its circuit breaker.
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class BulkheadFilter implements GlobalFilter, Ordered {
+    ResilienceProperties properties;
+    MeterRegistry meterRegistry;
+    ObjectProvider<DispatcherHandler> dispatcherHandler;
+    Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        String service = route != null ? route.getUri().getHost() : null;
+        if (service == null || properties.bulkhead(service) <= 0)
+            return chain.filter(exchange);
+
+        Bulkhead bulkhead = bulkheads.computeIfAbsent(service, this::register);
+        if (!bulkhead.tryAcquire()) {
+            bulkhead.rejected.increment();
+            ServerWebExchange forwarded = exchange.mutate()
+                    .request(exchange.getRequest().mutate().path(AdaptiveConcurrencyGatewayFilterFactory.FALLBACK_PATH).build())
+                    .build();
+            return dispatcherHandler.getObject().handle(forwarded);
+        }
+        return chain.filter(exchange).doFinally(signal -> bulkhead.inFlight.decrementAndGet());
+    }
+
+    @Override
+    public int getOrder() {
+        return FilterOrder.BULKHEAD;
+    }
+
+    private Bulkhead register(String service) {
+        Bulkhead bulkhead = new Bulkhead(properties.bulkhead(service), Counter.builder("gateway.bulkhead.rejected")
+                .description("Requests answered by the fallback because the service's bulkhead was full")
+                .tag("service", service)
+                .register(meterRegistry));
+
+        Gauge.builder("gateway.bulkhead.in-flight", bulkhead.inFlight, AtomicInteger::get)
+                .description("Requests in flight to the service")
+                .tag("service", service)
+                .register(meterRegistry);
+        Gauge.builder("gateway.bulkhead.saturation", bulkhead, Bulkhead::saturation)
+                .description("Share of the service's bulkhead in use")
+                .tag("service", service)
+                .register(meterRegistry);
+        return bulkhead;
+    }
+
+    private static final class Bulkhead {
+        private final int maxConcurrentCalls;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Counter rejected;
+
+        private Bulkhead(int maxConcurrentCalls, Counter rejected) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            this.rejected = rejected;
+        }
+
+        private boolean tryAcquire() {
+            while (true) {
+                int current = inFlight.get();
+                if (current >= maxConcurrentCalls)
+                    return false;
+                if (inFlight.compareAndSet(current, current + 1))
+                    return true;
+            }
+        }
+
+        private double saturation() {
+            return (double) inFlight.get() / maxConcurrentCalls;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.khiem.gateway.configuration;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigBuilder;
+import org.springframework.cloud.client.circuitbreaker.Customizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Locale;
+
+/**
+ * Gives every route its own circuit breaker. The {@code CircuitBreaker} default filter has no name, so
+ * Spring Cloud Gateway names each instance after its route id, and the instance is configured from
+ * {@code app.resilience.routes.<route id>.circuit-breaker}.
+ *
+ * <p>The state of each breaker is exported as {@code gateway.circuitbreaker.state} (0 closed, 1 open,
+ * 2 half open) and every transition is counted in {@code gateway.circuitbreaker.transitions}.
+ */
+@Slf4j
+@Configuration
+public class CircuitBreakerConfiguration {
+
+    @Bean
+    Customizer<ReactiveResilience4JCircuitBreakerFactory> routeCircuitBreakers(ResilienceProperties properties,
+                                                                              MeterRegistry meterRegistry) {
+        return factory -> {
+            factory.configureDefault(routeId -> configuration(routeId, properties.route(routeId).getCircuitBreaker()));
+            factory.getCircuitBreakerRegistry().getEventPublisher()
+                    .onEntryAdded(event -> monitor(event.getAddedEntry(), meterRegistry));
+        };
+    }
+
+    private static Resilience4JConfigBuilder.Resilience4JCircuitBreakerConfiguration configuration(
+            String routeId, ResilienceProperties.CircuitBreaker circuitBreaker) {
+        return new Resilience4JConfigBuilder(routeId)
+                .circuitBreakerConfig(CircuitBreakerConfig.custom()
+                        .failureRateThreshold(circuitBreaker.getFailureRateThreshold())
+                        .slowCallRateThreshold(circuitBreaker.getSlowCallRateThreshold())
+                        .slowCallDurationThreshold(circuitBreaker.getSlowCallDuration())
+                        .slidingWindowSize(circuitBreaker.getSlidingWindowSize())
+                        .minimumNumberOfCalls(circuitBreaker.getMinimumNumberOfCalls())
+                        .waitDurationInOpenState(circuitBreaker.getWaitInOpenState())
+                        .permittedNumberOfCallsInHalfOpenState(circuitBreaker.getPermittedCallsInHalfOpenState())
+                        .build())
+                .timeLimiterConfig(TimeLimiterConfig.custom()
+                        .timeoutDuration(circuitBreaker.getTimeout())
+                        .build())
+                .build();
+    }
+
+    private static void monitor(CircuitBreaker circuitBreaker, MeterRegistry meterRegistry) {
+        String name = circuitBreaker.getName();
+        Gauge.builder("gateway.circuitbreaker.state", circuitBreaker, breaker -> breaker.getState().getOrder())
+                .description("State of the route's circuit breaker: 0 closed, 1 open, 2 half open")
+                .tag("name", name)
+                .register(meterRegistry);
+
+        circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            CircuitBreaker.StateTransition transition = event.getStateTransition();
+            log.warn("Circuit breaker {} went from {} to {}", name, transition.getFromState(), transition.getToState());
+            Counter.builder("gateway.circuitbreaker.transitions")
+                    .description("State transitions of the route's circuit breaker")
+                    .tag("name", name)
+                    .tag("from", transition.getFromState().name().toLowerCase(Locale.ROOT))
+                    .tag("to", transition.getToState().name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry)
+                    .increment();
+        });
+    }
+}
@@ -0,0 +1,190 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.TokenDigest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares one upstream call among concurrent identical GET requests of a route: same path, query,
+ * {@code Authorization} and {@code vary-headers}. The first request is forwarded and its response is
+ * buffered and replayed to every identical request that arrived while it was in flight.
+ *
+ * <p>Nothing is kept once the call completes, so unlike the response cache this holds for responses
+ * marked {@code no-store} too. Responses setting cookies or larger than {@code max-body-bytes} are not
+ * shared; requests waiting on them, or on a first request that failed or was cancelled, are forwarded
+ * on their own. A body of unknown length is held only until it passes {@code max-body-bytes}, then the
+ * waiters are released and the rest streams through.
+ */
+@Component
+public class CollapseGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<CollapseGatewayFilterFactory.Config> {
+    // Conditional and partial requests get different answers, they are only identical when these match too
+    private static final List<String> REQUEST_HEADERS =
+            List.of(HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.RANGE);
+
+    private final MeterRegistry meterRegistry;
+
+    // Responses being fetched by a first request, identical requests wait on them
+    private final ConcurrentMap<String, Sinks.One<SharedResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public CollapseGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("gateway.collapse.in-flight", inFlight, ConcurrentMap::size)
+                .description("Upstream calls currently shared by identical requests")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        Counter forwarded = requests(config, "forwarded");
+        Counter collapsed = requests(config, "collapsed");
+        Counter unshared = requests(config, "unshared");
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (request.getMethod() != HttpMethod.GET)
+                return chain.filter(exchange);
+
+            String key = key(request, config);
+            Sinks.One<SharedResponse> sink = Sinks.one();
+            Sinks.One<SharedResponse> existing = inFlight.putIfAbsent(key, sink);
+            if (existing != null) {
+                collapsed.increment();
+                return existing.asMono()
+                        .flatMap(shared -> replay(exchange.getResponse(), shared))
+                        .switchIfEmpty(Mono.defer(() -> {
+                            unshared.increment();
+                            return chain.filter(exchange);
+                        }));
+            }
+
+            forwarded.increment();
+            return chain.filter(exchange.mutate().response(capture(exchange, sink, config)).build())
+                    .doFinally(signal -> {
+                        inFlight.remove(key, sink);
+                        // Releases waiters when nothing was shared, they are forwarded on their own
+                        sink.tryEmitEmpty();
+                    });
+        }, FilterOrder.RESPONSE_DECORATOR);
+    }
+
+    // Writes the first request's response and hands a copy to the identical requests waiting on it
+    private static ServerHttpResponseDecorator capture(ServerWebExchange exchange, Sinks.One<SharedResponse> sink,
+                                                      Config config) {
+        return new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                HttpHeaders headers = getHeaders();
+                if (headers.containsKey(HttpHeaders.SET_COOKIE) || headers.getContentLength() > config.getMaxBodyBytes()) {
+                    sink.tryEmitEmpty();
+                    return getDelegate().writeWith(body);
+                }
+
+                AtomicLong size = new AtomicLong();
+                return getDelegate().writeWith(Flux.<DataBuffer>from(body)
+                        .bufferUntil(buffer -> size.addAndGet(buffer.readableByteCount()) > config.getMaxBodyBytes())
+                        .<DataBuffer>switchOnFirst((first, chunks) -> {
+                            if (size.get() > config.getMaxBodyBytes() || !(first.hasValue() || first.isOnComplete())) {
+                                sink.tryEmitEmpty();
+                                return chunks.flatMapIterable(buffers -> buffers);
+                            }
+
+                            byte[] bytes = first.hasValue() ? read(first.get()) : new byte[0];
+                            HttpHeaders shared = new HttpHeaders();
+                            shared.putAll(headers);
+                            shared.remove(HttpHeaders.TRANSFER_ENCODING);
+                            sink.tryEmitValue(new SharedResponse(getStatusCode(), shared, bytes));
+                            return Mono.just(bufferFactory().wrap(bytes));
+                        })
+                        .doOnDiscard(DataBuffer.class, DataBufferUtils::release));
+            }
+        };
+    }
+
+    private static byte[] read(List<DataBuffer> buffers) {
+        byte[] bytes = new byte[buffers.stream().mapToInt(DataBuffer::readableByteCount).sum()];
+        int offset = 0;
+        for (DataBuffer buffer : buffers) {
+            int length = buffer.readableByteCount();
+            buffer.read(bytes, offset, length);
+            offset += length;
+            DataBufferUtils.release(buffer);
+        }
+        return bytes;
+    }
+
+    private static Mono<Void> replay(ServerHttpResponse response, SharedResponse shared) {
+        response.setStatusCode(shared.status());
+        response.getHeaders().putAll(shared.headers());
+        response.getHeaders().setContentLength(shared.body().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(shared.body())));
+    }
+
+    private static String key(ServerHttpRequest request, Config config) {
+        StringBuilder key = new StringBuilder(config.getRouteId()).append(' ').append(request.getURI().getRawPath());
+        if (request.getURI().getRawQuery() != null)
+            key.append('?').append(request.getURI().getRawQuery());
+
+        // Responses may depend on who asks, only requests with the same credentials share one
+        String authorization = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        key.append('|').append(authorization != null ? TokenDigest.of(authorization) : "anonymous");
+
+        for (String header : REQUEST_HEADERS)
+            key.append('|').append(header).append('=').append(request.getHeaders().getOrEmpty(header));
+        for (String header : config.getVaryHeaders())
+            key.append('|').append(header).append('=').append(request.getHeaders().getOrEmpty(header));
+        return key.toString();
+    }
+
+    private Counter requests(Config config, String result) {
+        return Counter.builder("gateway.collapse.requests")
+                .description("GET requests seen by the collapse filter, by whether they were forwarded or shared a call")
+                .tag("route", config.getRouteId())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record SharedResponse(HttpStatusCode status, HttpHeaders headers, byte[] body) {
+    }
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Config implements HasRouteId {
+        String routeId;
+
+        // Request headers that change the response, only requests agreeing on them share a call
+        List<String> varyHeaders = List.of(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_LANGUAGE);
+
+        // Larger responses are passed through, identical requests then go upstream on their own
+        int maxBodyBytes = 1048576;
+    }
+}
@@ -0,0 +1,208 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.ResponseCache;
+import com.khiem.gateway.service.ResponseCompressor;
+import com.khiem.gateway.service.ResponseCompressor.Encoding;
+import com.khiem.gateway.service.ResponseCompressor.Level;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compresses responses of a route with brotli or gzip, whichever the client prefers and the gateway
+ * supports, when they are at least {@code min-response-size} bytes and of an allowed {@code mime-types}.
+ * Bodies are compressed whole, so only those of at most {@code max-response-size} bytes are; a larger one,
+ * announced or found while it streams, is passed through as it is.
+ *
+ * <p>Upstream responses are requested uncompressed, so the response cache keeps one identity copy and
+ * every encoding is produced here. Responses with an ETag that may be shared are compressed once and the
+ * compressed bytes are kept by {@link ResponseCompressor}, keyed by path, ETag and encoding. Compressed
+ * responses carry a weak version of the ETag, as the bytes differ from the identity representation.
+ */
+@Component
+public class CompressionGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<CompressionGatewayFilterFactory.Config> {
+    private final ResponseCompressor compressor;
+    private final Counter compressed;
+    private final Counter cached;
+    private final Counter skippedCpu;
+
+    public CompressionGatewayFilterFactory(ResponseCompressor compressor, MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.compressor = compressor;
+        this.compressed = responses(meterRegistry, "compressed");
+        this.cached = responses(meterRegistry, "cached");
+        this.skippedCpu = responses(meterRegistry, "skipped-cpu");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        List<MediaType> mimeTypes = MediaType.parseMediaTypes(config.getMimeTypes());
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            String acceptEncoding = request.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING);
+            // The gateway compresses itself, an encoded upstream body could not be cached or recompressed
+            ServerHttpRequest identityRequest = request.mutate()
+                    .headers(headers -> headers.remove(HttpHeaders.ACCEPT_ENCODING))
+                    .build();
+
+            Encoding encoding = compressor.negotiate(acceptEncoding);
+            ServerWebExchange mutated = exchange.mutate().request(identityRequest).build();
+            if (request.getMethod() == HttpMethod.HEAD)
+                return chain.filter(mutated);
+
+            return chain.filter(mutated.mutate().response(compress(mutated, encoding, mimeTypes, config)).build());
+        }, FilterOrder.COMPRESSION);
+    }
+
+    private ServerHttpResponseDecorator compress(ServerWebExchange exchange, Encoding encoding,
+                                                 List<MediaType> mimeTypes, Config config) {
+        return new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                HttpHeaders headers = getHeaders();
+                if (!isCompressible(headers, mimeTypes))
+                    return getDelegate().writeWith(body);
+
+                if (!headers.getVary().contains(HttpHeaders.ACCEPT_ENCODING))
+                    headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                long contentLength = headers.getContentLength();
+                if (encoding == null || getStatusCode() == null || getStatusCode().value() != HttpStatus.OK.value()
+                        || (contentLength >= 0 && contentLength < config.getMinResponseSize())
+                        || contentLength > config.getMaxResponseSize())
+                    return getDelegate().writeWith(body);
+
+                // Buffers are held only until the body passes max-response-size, the rest streams through
+                AtomicLong size = new AtomicLong();
+                return getDelegate().writeWith(Flux.<DataBuffer>from(body)
+                        .bufferUntil(buffer -> size.addAndGet(buffer.readableByteCount()) > config.getMaxResponseSize())
+                        .<DataBuffer>switchOnFirst((first, chunks) -> {
+                            if (size.get() > config.getMaxResponseSize() || !(first.hasValue() || first.isOnComplete()))
+                                return chunks.flatMapIterable(buffers -> buffers);
+
+                            byte[] bytes = first.hasValue() ? read(first.get()) : new byte[0];
+                            byte[] encoded = bytes.length < config.getMinResponseSize() ? null : encode(bytes);
+                            if (encoded == null)
+                                return Mono.just(bufferFactory().wrap(bytes));
+
+                            headers.set(HttpHeaders.CONTENT_ENCODING, encoding.token());
+                            headers.setContentLength(encoded.length);
+                            String etag = headers.getETag();
+                            if (etag != null && !etag.startsWith("W/"))
+                                headers.setETag("W/" + etag);
+                            return Mono.just(bufferFactory().wrap(encoded));
+                        })
+                        .doOnDiscard(DataBuffer.class, DataBufferUtils::release));
+            }
+
+            // Compressed bytes, or null when they wouldn't be smaller or CPU is too busy to compress
+            private byte[] encode(byte[] bytes) {
+                String key = cacheKey(exchange, getHeaders());
+                byte[] encoded = key != null ? compressor.cached(key, encoding) : null;
+                if (encoded != null) {
+                    cached.increment();
+                    return encoded;
+                }
+
+                Level level = compressor.level();
+                if (level == Level.OFF) {
+                    skippedCpu.increment();
+                    return null;
+                }
+
+                encoded = compressor.compress(bytes, encoding, level);
+                if (encoded.length >= bytes.length)
+                    return null;
+
+                compressed.increment();
+                if (key != null)
+                    compressor.cache(key, encoding, encoded);
+                return encoded;
+            }
+        };
+    }
+
+    private static byte[] read(List<DataBuffer> buffers) {
+        byte[] bytes = new byte[buffers.stream().mapToInt(DataBuffer::readableByteCount).sum()];
+        int offset = 0;
+        for (DataBuffer buffer : buffers) {
+            int length = buffer.readableByteCount();
+            buffer.read(bytes, offset, length);
+            offset += length;
+            DataBufferUtils.release(buffer);
+        }
+        return bytes;
+    }
+
+    private static boolean isCompressible(HttpHeaders headers, List<MediaType> mimeTypes) {
+        MediaType contentType = headers.getContentType();
+        return contentType != null
+                && !headers.containsKey(HttpHeaders.CONTENT_ENCODING)
+                && mimeTypes.stream().anyMatch(mimeType -> mimeType.includes(contentType));
+    }
+
+    // Path and ETag identify the bytes of a shareable response, others are compressed every time
+    private static String cacheKey(ServerWebExchange exchange, HttpHeaders headers) {
+        String etag = headers.getETag();
+        if (etag == null)
+            return null;
+
+        Map<String, String> directives = ResponseCache.cacheControl(headers);
+        if (directives.containsKey("no-store") || directives.containsKey("private"))
+            return null;
+
+        ServerHttpRequest request = exchange.getRequest();
+        String query = request.getURI().getRawQuery();
+        return request.getURI().getRawPath() + (query != null ? "?" + query : "") + '|' + etag;
+    }
+
+    private static Counter responses(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gateway.compression.responses")
+                .description("Responses eligible for compression, by how they were compressed or why not")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Config {
+        // Smaller bodies are sent as they are, compression would barely save a packet
+        int minResponseSize = 1024;
+
+        // Larger bodies are sent as they are rather than held in memory to be compressed whole
+        int maxResponseSize = 1048576;
+
+        List<String> mimeTypes = List.of(
+                MediaType.APPLICATION_JSON_VALUE,
+                "application/*+json",
+                MediaType.TEXT_PLAIN_VALUE,
+                MediaType.TEXT_HTML_VALUE,
+                "text/css",
+                "application/javascript",
+                MediaType.APPLICATION_XML_VALUE,
+                "image/svg+xml");
+    }
+}
@@ -0,0 +1,50 @@
+package com.khiem.gateway.configuration;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.khiem.gateway.dto.ApiResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Bodies of the gateway's most frequent error answers, serialized once at startup. Rejecting a request
+ * with one of them only wraps the shared bytes, which matters when a client floods the gateway with bad
+ * tokens or unknown paths.
+ */
+@Component
+public class ErrorResponses {
+    private final byte[] unauthenticated;
+    private final byte[] notFound;
+
+    public ErrorResponses(ObjectMapper objectMapper) throws JsonProcessingException {
+        this.unauthenticated = objectMapper.writeValueAsBytes(ApiResponse.builder()
+                .code(1401)
+                .message("Unauthenticated")
+                .build());
+        this.notFound = objectMapper.writeValueAsBytes(ApiResponse.builder()
+                .code(404)
+                .message("Endpoint not found")
+                .build());
+    }
+
+    public Mono<Void> unauthenticated(ServerHttpResponse response) {
+        return write(response, HttpStatus.UNAUTHORIZED, unauthenticated);
+    }
+
+    public Mono<Void> notFound(ServerHttpResponse response) {
+        return write(response, HttpStatus.NOT_FOUND, notFound);
+    }
+
+    // The bytes are wrapped, not copied, and never written to, so every response can share them
+    private static Mono<Void> write(ServerHttpResponse response, HttpStatus status, byte[] body) {
+        response.setStatusCode(status);
+        HttpHeaders headers = response.getHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setContentLength(body.length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+}
@@ -0,0 +1,42 @@
+package com.khiem.gateway.configuration;
+
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+
+// Orders shared by the gateway's own filters; route filters sort together with global ones
+public final class FilterOrder {
+    // Authentication runs before everything else so no filter below it can answer an unauthenticated request
+    public static final int AUTHENTICATION = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 100;
+
+    // Shed by priority before any work is spent on the request, including verifying its token
+    public static final int ADMISSION = AUTHENTICATION - 1;
+
+    // Access logging wraps authentication and admission so rejected requests are logged too
+    public static final int ACCESS_LOG = ADMISSION - 1;
+
+    // Outermost, so route metrics include the time spent in every other filter
+    public static final int ROUTE_METRICS = ACCESS_LOG - 1;
+
+    // Filters that replace or capture the response body must wrap it before NettyWriteResponseFilter writes it
+    public static final int RESPONSE_DECORATOR = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+
+    // Wraps the other response decorators, so cached and captured bodies are stored before they are compressed
+    public static final int COMPRESSION = RESPONSE_DECORATOR - 1;
+
+    // Same slot as Spring Cloud LoadBalancer's filter: after the request URL is built from the route URI
+    public static final int LOAD_BALANCER = RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER + 150;
+
+    // Inside the route's circuit breaker. Retries run the chain again and take a permit per attempt, while
+    // Hedge sends both attempts of a hedged request under the request's one permit
+    public static final int BULKHEAD = LOAD_BALANCER - 1;
+
+    // Filters that send the upstream request themselves run once the request URL is final, just before routing
+    public static final int UPSTREAM_CALL = NettyRoutingFilter.ORDER - 1;
+
+    // Wraps the upstream call, including any filter sending it itself
+    public static final int UPSTREAM_TIMING = UPSTREAM_CALL - 1;
+
+    private FilterOrder() {
+    }
+}
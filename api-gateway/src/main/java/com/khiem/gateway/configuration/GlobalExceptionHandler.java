@@ -24,6 +24,7 @@ import reactor.core.publisher.Mono;
 public class GlobalExceptionHandler implements ErrorWebExceptionHandler {
 
     private final ObjectMapper objectMapper;
+    private final ErrorResponses errorResponses;
 
     @Override
     public Mono<Void> handle(ServerWebExchange exchange, Throwable ex) {
@@ -46,11 +47,9 @@ public class GlobalExceptionHandler implements ErrorWebExceptionHandler {
             code = status.value();
         }
 
-        // Handle specific 404 case for cleaner message
-        if (status == HttpStatus.NOT_FOUND) {
-            message = "Endpoint not found";
-            code = 404;
-        }
+        // Unknown paths are the most frequent error, answered with a body encoded once at startup
+        if (status == HttpStatus.NOT_FOUND)
+            return errorResponses.notFound(response);
 
         response.setStatusCode(status);
         response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
@@ -0,0 +1,141 @@
+package com.khiem.gateway.configuration;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.CONNECT_TIMEOUT_ATTR;
+
+/**
+ * Replaces Spring Cloud Gateway's routing filter, which is switched off with
+ * {@code spring.cloud.gateway.global-filter.netty-routing.enabled: false}, so routes with
+ * {@code protocol: h2c} in their metadata can talk HTTP/2 cleartext to their upstream.
+ *
+ * <p>Each such route gets its own connection pool, named {@code upstream-<route id>}, whose connections
+ * multiplex concurrent requests as streams. The route's client is built by the gateway's
+ * {@link HttpClientFactory}, so it keeps the {@code spring.cloud.gateway.httpclient} settings, pool limits,
+ * SSL and customizers; only the pool's name and metrics differ. Unless {@code app.upstream.h2c.prior-knowledge}
+ * is set the first request on a connection asks for an upgrade, and an upstream that declines keeps being
+ * spoken to over HTTP/1.1 on that connection. Other routes share the gateway's HTTP/1.1 client as before.
+ *
+ * <p>Filters that send the upstream request themselves, such as Hedge, take their client from
+ * {@link #getHttpClient(Route, ServerWebExchange)} too.
+ */
+@Slf4j
+@Component
+public class H2cRoutingFilter extends NettyRoutingFilter implements DisposableBean {
+    public static final String PROTOCOL_METADATA = "protocol";
+
+    private final HttpClientProperties httpClientProperties;
+    private final ObjectProvider<ServerProperties> serverProperties;
+    private final ObjectProvider<HttpClientSslConfigurer> sslConfigurer;
+    private final ObjectProvider<HttpClientCustomizer> customizers;
+    private final UpstreamH2cProperties properties;
+    private final HttpProtocol[] protocols;
+    private final Map<String, RouteClient> clients = new ConcurrentHashMap<>();
+
+    public H2cRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+                            HttpClientProperties httpClientProperties,
+                            ObjectProvider<ServerProperties> serverProperties,
+                            ObjectProvider<HttpClientSslConfigurer> sslConfigurer,
+                            ObjectProvider<HttpClientCustomizer> customizers,
+                            UpstreamH2cProperties properties) {
+        super(httpClient, headersFilters, httpClientProperties);
+        this.httpClientProperties = httpClientProperties;
+        this.serverProperties = serverProperties;
+        this.sslConfigurer = sslConfigurer;
+        this.customizers = customizers;
+        this.properties = properties;
+        this.protocols = properties.isPriorKnowledge()
+                ? new HttpProtocol[]{HttpProtocol.H2C}
+                : new HttpProtocol[]{HttpProtocol.H2C, HttpProtocol.HTTP11};
+    }
+
+    @Override
+    public HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        if (!properties.isEnabled() || !"h2c".equalsIgnoreCase(String.valueOf(route.getMetadata().get(PROTOCOL_METADATA))))
+            return super.getHttpClient(route, exchange);
+
+        // Routes are rebuilt on refresh, a route keeps its pool as long as its id and connect timeout stay the same
+        Object connectTimeout = route.getMetadata().get(CONNECT_TIMEOUT_ATTR);
+        RouteClient client = clients.compute(route.getId(), (routeId, existing) ->
+                existing != null && String.valueOf(connectTimeout).equals(existing.connectTimeout())
+                        ? existing
+                        : create(routeId, connectTimeout, existing));
+        return client.httpClient();
+    }
+
+    @Override
+    public void destroy() {
+        clients.values().forEach(client -> client.connectionProvider().dispose());
+    }
+
+    private RouteClient create(String routeId, Object connectTimeout, RouteClient replaced) {
+        if (replaced != null)
+            replaced.connectionProvider().disposeLater().subscribe();
+
+        RouteHttpClientFactory factory = new RouteHttpClientFactory(routeId);
+        HttpClient httpClient = factory.build().protocol(protocols);
+        if (connectTimeout != null)
+            httpClient = httpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Integer.valueOf(connectTimeout.toString()));
+
+        log.info("Route {} talks h2c to its upstream{}", routeId, properties.isPriorKnowledge() ? " with prior knowledge" : "");
+        return new RouteClient(httpClient, factory.connectionProvider, String.valueOf(connectTimeout));
+    }
+
+    private record RouteClient(HttpClient httpClient, ConnectionProvider connectionProvider, String connectTimeout) {
+    }
+
+    // The gateway's client factory around a pool of the route's own, named after it and with metrics on
+    private final class RouteHttpClientFactory extends HttpClientFactory {
+        private final String routeId;
+        private ConnectionProvider connectionProvider;
+
+        private RouteHttpClientFactory(String routeId) {
+            super(httpClientProperties, serverProperties.getIfAvailable(ServerProperties::new),
+                    sslConfigurer.getIfAvailable(), customizers.orderedStream().toList());
+            this.routeId = routeId;
+        }
+
+        private HttpClient build() {
+            try {
+                return createInstance();
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not build the h2c client of route " + routeId, e);
+            }
+        }
+
+        @Override
+        protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+            ConnectionProvider gateway = super.buildConnectionProvider(properties);
+            ConnectionProvider.Builder builder = gateway.mutate();
+            // Pooling is disabled, every request gets a new connection and there is no pool to name
+            if (builder == null) {
+                connectionProvider = gateway;
+                return gateway;
+            }
+
+            gateway.dispose();
+            connectionProvider = builder.name("upstream-" + routeId).metrics(true).build();
+            return connectionProvider;
+        }
+    }
+}
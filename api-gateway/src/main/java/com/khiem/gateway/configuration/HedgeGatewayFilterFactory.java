@@ -0,0 +1,296 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.HedgeBudget;
+import com.khiem.gateway.service.UpstreamInstance;
+import com.khiem.gateway.service.UpstreamLoadBalancer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.PRESERVE_HOST_HEADER_ATTRIBUTE;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.setAlreadyRouted;
+
+/**
+ * Sends GET requests of a route upstream itself and, when the first attempt hasn't answered within the
+ * route's recent {@code percentile} latency, sends a second one and answers with whichever comes first.
+ *
+ * <p>Only for idempotent GET routes. Hedges are paid from the gateway-wide {@link HedgeBudget}. The
+ * attempt whose response headers arrive first wins and its body is streamed to the client, the other one
+ * is cancelled, so responses of any size can be hedged without buffering. Attempts go out through the HTTP client {@link H2cRoutingFilter} would route with, h2c included.
+ *
+ * <p>On {@code instances://} routes the hedge goes to another instance than the one the first attempt is
+ * waiting on, chosen by {@link UpstreamLoadBalancer}, and is not sent when the service has no other. Each
+ * attempt is reported to the load balancer on its own instance, the losing one as cancelled.
+ */
+@Component
+public class HedgeGatewayFilterFactory extends AbstractGatewayFilterFactory<HedgeGatewayFilterFactory.Config> {
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final WebClient.Builder webClientBuilder;
+    private final H2cRoutingFilter routingFilter;
+    private final ObjectProvider<List<HttpHeadersFilter>> headersFilters;
+    private final HedgeBudget hedgeBudget;
+    private final UpstreamLoadBalancer loadBalancer;
+    private final MeterRegistry meterRegistry;
+
+    public HedgeGatewayFilterFactory(WebClient.Builder webClientBuilder,
+                                     H2cRoutingFilter routingFilter,
+                                     ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+                                     HedgeBudget hedgeBudget,
+                                     UpstreamLoadBalancer loadBalancer,
+                                     MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.webClientBuilder = webClientBuilder;
+        this.routingFilter = routingFilter;
+        this.headersFilters = headersFilters;
+        this.hedgeBudget = hedgeBudget;
+        this.loadBalancer = loadBalancer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        HedgeDelay hedgeDelay = new HedgeDelay(config, Timer.builder("gateway.hedge.attempt.latency")
+                .description("Latency of single upstream attempts, the hedge delay is taken from it")
+                .tag("route", config.getRouteId())
+                .publishPercentiles(config.getPercentile())
+                .distributionStatisticExpiry(Duration.ofMinutes(1))
+                .distributionStatisticBufferLength(3)
+                .register(meterRegistry));
+        Counter hedged = requests(config, "hedged");
+        Counter budgetExhausted = requests(config, "budget-exhausted");
+        Counter hedgeWon = requests(config, "hedge-won");
+        AtomicReference<WebClient> routeWebClient = new AtomicReference<>();
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+            if (!isHedgeable(exchange, url))
+                return chain.filter(exchange);
+
+            hedgeBudget.deposit();
+            WebClient webClient = webClient(exchange, routeWebClient);
+            HttpHeaders headers = requestHeaders(exchange);
+            // UpstreamLoadBalancerFilter has resolved the URL to this instance, the attempts are reported here
+            UpstreamInstance primaryInstance = exchange.getAttribute(UpstreamLoadBalancerFilter.UPSTREAM_INSTANCE_ATTRIBUTE);
+            URI balancedUrl = exchange.getAttribute(UpstreamLoadBalancerFilter.BALANCED_URL_ATTRIBUTE);
+            if (primaryInstance != null)
+                exchange.getAttributes().put(UpstreamLoadBalancerFilter.ATTEMPTS_REPORTED_ATTRIBUTE, true);
+
+            Flux<Signal<Object>> primary = attempt(webClient, url, primaryInstance, headers, hedgeDelay).materialize();
+            // A hedge failing before its headers leaves the decision to the primary, a failed primary is
+            // answered as is. Whichever emits first wins, the other is cancelled
+            AtomicBoolean hedgeAnswered = new AtomicBoolean();
+            Flux<Signal<Object>> hedge = Mono.delay(hedgeDelay.get())
+                    .flatMapMany(tick -> {
+                        UpstreamInstance hedgeInstance = null;
+                        if (primaryInstance != null) {
+                            hedgeInstance = loadBalancer.chooseOther(balancedUrl.getHost(), primaryInstance);
+                            // Hedging on the instance that is already slow wouldn't help
+                            if (hedgeInstance == null)
+                                return Flux.empty();
+                        }
+                        if (!hedgeBudget.tryWithdraw()) {
+                            budgetExhausted.increment();
+                            if (hedgeInstance != null)
+                                loadBalancer.cancel(hedgeInstance);
+                            return Flux.empty();
+                        }
+
+                        hedged.increment();
+                        URI hedgeUrl = hedgeInstance != null ? UpstreamLoadBalancer.resolve(url, hedgeInstance) : url;
+                        return attempt(webClient, hedgeUrl, hedgeInstance, headers, hedgeDelay);
+                    })
+                    .doOnNext(part -> {
+                        if (hedgeAnswered.compareAndSet(false, true))
+                            hedgeWon.increment();
+                    })
+                    .map(Signal::next)
+                    .onErrorResume(throwable -> hedgeAnswered.get() ? Flux.error(throwable) : Flux.empty());
+
+            setAlreadyRouted(exchange);
+            return Flux.firstWithValue(primary, hedge)
+                    .<Object>dematerialize()
+                    .switchOnFirst((first, parts) -> first.hasValue()
+                            ? write(exchange, (ResponseEntity<?>) first.get(), parts.skip(1).cast(DataBuffer.class))
+                            : parts.then())
+                    .then();
+        }, FilterOrder.UPSTREAM_CALL);
+    }
+
+    private static boolean isHedgeable(ServerWebExchange exchange, URI url) {
+        return exchange.getRequest().getMethod() == HttpMethod.GET
+                && url != null
+                && ("http".equals(url.getScheme()) || "https".equals(url.getScheme()));
+    }
+
+    // Built on the route's first request, the filter is applied again when routes are rebuilt
+    private WebClient webClient(ServerWebExchange exchange, AtomicReference<WebClient> routeWebClient) {
+        WebClient webClient = routeWebClient.get();
+        if (webClient != null)
+            return webClient;
+
+        Route route = exchange.getRequiredAttribute(GATEWAY_ROUTE_ATTR);
+        webClient = webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(routingFilter.getHttpClient(route, exchange)))
+                .build();
+        return routeWebClient.compareAndSet(null, webClient) ? webClient : routeWebClient.get();
+    }
+
+    // Emits the response status and headers as a ResponseEntity, then the body as it arrives. The outcome
+    // is reported on the instance when there is one
+    private Flux<Object> attempt(WebClient webClient, URI url, UpstreamInstance instance, HttpHeaders headers,
+                                 HedgeDelay hedgeDelay) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean answered = new AtomicBoolean();
+            AtomicReference<HttpStatusCode> status = new AtomicReference<>();
+            return webClient.get()
+                    .uri(url)
+                    .headers(outgoing -> outgoing.addAll(headers))
+                    .exchangeToFlux(response -> {
+                        answered.set(true);
+                        status.set(response.statusCode());
+                        hedgeDelay.record(System.nanoTime() - start);
+                        ResponseEntity<Void> head = ResponseEntity.status(response.statusCode())
+                                .headers(response.headers().asHttpHeaders())
+                                .build();
+                        return Flux.<Object>concat(Mono.just(head), response.bodyToFlux(DataBuffer.class));
+                    })
+                    // Attempts cancelled before answering are recorded too, as a lower bound, so slow routes
+                    // aren't under-sampled
+                    .doFinally(signal -> {
+                        if (!answered.get())
+                            hedgeDelay.record(System.nanoTime() - start);
+                        if (instance != null)
+                            report(instance, signal, status.get(), System.nanoTime() - start);
+                    });
+        });
+    }
+
+    private void report(UpstreamInstance instance, SignalType signal, HttpStatusCode status, long rttNanos) {
+        if (signal == SignalType.CANCEL) {
+            loadBalancer.cancel(instance);
+            return;
+        }
+        boolean failed = signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+        loadBalancer.complete(instance, rttNanos, failed);
+    }
+
+    private HttpHeaders requestHeaders(ServerWebExchange exchange) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(HttpHeadersFilter.filterRequest(headersFilters.getIfAvailable(), exchange));
+        if (!exchange.getAttributeOrDefault(PRESERVE_HOST_HEADER_ATTRIBUTE, false))
+            headers.remove(HttpHeaders.HOST);
+        return headers;
+    }
+
+    // The upstream Content-Length is kept when there is one, the body is streamed either way
+    private Mono<Void> write(ServerWebExchange exchange, ResponseEntity<?> head, Flux<DataBuffer> body) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(head.getStatusCode());
+        response.getHeaders().putAll(HttpHeadersFilter.filter(headersFilters.getIfAvailable(), head.getHeaders(),
+                exchange, HttpHeadersFilter.Type.RESPONSE));
+        response.getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+        return response.writeWith(body);
+    }
+
+    private Counter requests(Config config, String result) {
+        return Counter.builder("gateway.hedge.requests")
+                .description("Hedging decisions made for GET requests")
+                .tag("route", config.getRouteId())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    // The route's percentile latency, re-read from the timer at most once a second
+    private static final class HedgeDelay {
+        private final Config config;
+        private final Timer latency;
+        private volatile Duration delay;
+        private volatile long refreshedAt;
+
+        private HedgeDelay(Config config, Timer latency) {
+            this.config = config;
+            this.latency = latency;
+            this.delay = config.getInitialDelay();
+            this.refreshedAt = System.nanoTime();
+        }
+
+        void record(long nanos) {
+            latency.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        Duration get() {
+            long now = System.nanoTime();
+            if (now - refreshedAt > DELAY_REFRESH_NANOS) {
+                refreshedAt = now;
+                delay = compute();
+            }
+            return delay;
+        }
+
+        private Duration compute() {
+            HistogramSnapshot snapshot = latency.takeSnapshot();
+            ValueAtPercentile[] percentiles = snapshot.percentileValues();
+            if (snapshot.count() < config.getMinSamples() || percentiles.length == 0)
+                return config.getInitialDelay();
+
+            Duration observed = Duration.ofNanos((long) percentiles[0].value(TimeUnit.NANOSECONDS));
+            if (observed.compareTo(config.getMinDelay()) < 0)
+                return config.getMinDelay();
+            return observed.compareTo(config.getMaxDelay()) > 0 ? config.getMaxDelay() : observed;
+        }
+    }
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Config implements HasRouteId {
+        String routeId;
+
+        // Latency percentile after which a second attempt is sent
+        double percentile = 0.95;
+
+        // Used until the route has seen min-samples attempts
+        Duration initialDelay = Duration.ofMillis(100);
+        int minSamples = 100;
+
+        Duration minDelay = Duration.ofMillis(5);
+        Duration maxDelay = Duration.ofSeconds(1);
+    }
+}
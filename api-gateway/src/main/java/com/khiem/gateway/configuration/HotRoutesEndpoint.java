@@ -0,0 +1,37 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.dto.response.HotRoute;
+import com.khiem.gateway.service.RouteStatistics;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+// GET /actuator/hotroutes?limit=5 lists the slowest and busiest routes over app.route-stats.window
+@Component
+@Endpoint(id = "hotroutes")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class HotRoutesEndpoint {
+    RouteStatistics routeStatistics;
+
+    @Value("${app.route-stats.top-k:5}")
+    @NonFinal
+    int defaultLimit;
+
+    @ReadOperation
+    public Map<String, List<HotRoute>> hotRoutes(@Nullable Integer limit) {
+        int topK = limit != null ? limit : defaultLimit;
+        return Map.of(
+                "byP99", routeStatistics.topByP99(topK),
+                "byThroughput", routeStatistics.topByThroughput(topK));
+    }
+}
@@ -0,0 +1,254 @@
+package com.khiem.gateway.configuration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rate limiter that decides every request from a token bucket held in this gateway node and only talks
+ * to Redis in periodic batches.
+ *
+ * <p>Each sync takes what every key consumed locally out of a global token bucket in Redis, refilled at
+ * the same replenish rate up to the same burst capacity, and reads back what is left. A node never holds
+ * more tokens than the global bucket, and a key the nodes overdrew together is denied on this node until
+ * the debt is replenished. The global limit is therefore enforced approximately: nodes can overshoot by
+ * what they admit within one sync interval. When Redis is unreachable the local buckets keep limiting
+ * per node.
+ *
+ * <p>Configured per route like the Redis limiter, with {@code hybrid-rate-limiter.replenishRate},
+ * {@code hybrid-rate-limiter.burstCapacity} and {@code hybrid-rate-limiter.requestedTokens}.
+ */
+@Slf4j
+@Primary
+@Component
+public class HybridRateLimiter extends AbstractRateLimiter<HybridRateLimiter.Config> {
+    public static final String CONFIGURATION_PROPERTY_NAME = "hybrid-rate-limiter";
+
+    // KEYS = one global bucket per key, ARGV = tokens consumed, replenish rate and burst capacity per key.
+    // Returns the tokens left in each bucket, negative when the nodes together took more than it held
+    private static final String SYNC_SCRIPT = """
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) + tonumber(time[2]) / 1000000
+            local remaining = {}
+            for i, key in ipairs(KEYS) do
+              local consumed = tonumber(ARGV[3 * i - 2])
+              local rate = tonumber(ARGV[3 * i - 1])
+              local burst = tonumber(ARGV[3 * i])
+              local state = redis.call('HMGET', key, 'tokens', 'timestamp')
+              local tokens = tonumber(state[1]) or burst
+              local elapsed = math.max(0, now - (tonumber(state[2]) or now))
+              tokens = math.min(burst, tokens + elapsed * rate) - consumed
+              redis.call('HSET', key, 'tokens', tostring(tokens), 'timestamp', tostring(now))
+              -- once full again the bucket is the same as a missing one
+              redis.call('EXPIRE', key, math.ceil((burst - tokens) / math.max(rate, 1)) + 1)
+              remaining[i] = math.floor(tokens)
+            end
+            return remaining
+            """;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final RedisScript<List<Long>> syncScript;
+    private final MeterRegistry meterRegistry;
+    private final Duration syncInterval;
+    private final Cache<String, Bucket> buckets;
+    private final Map<String, Counter> decisions = new ConcurrentHashMap<>();
+    private final Counter syncs;
+    private final Counter syncErrors;
+    private Disposable syncTask;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HybridRateLimiter(ReactiveStringRedisTemplate redisTemplate,
+                             ConfigurationService configurationService,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.rate-limiter.sync-interval:250}") long syncInterval,
+                             @Value("${app.rate-limiter.max-keys:100000}") long maxKeys,
+                             @Value("${app.rate-limiter.idle-timeout:60}") long idleTimeout) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.redisTemplate = redisTemplate;
+        this.syncScript = new DefaultRedisScript(SYNC_SCRIPT, List.class);
+        this.meterRegistry = meterRegistry;
+        this.syncInterval = Duration.ofMillis(syncInterval);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(Duration.ofSeconds(idleTimeout))
+                .build();
+
+        this.syncs = Counter.builder("gateway.ratelimiter.redis.syncs")
+                .description("Batched round trips to Redis")
+                .register(meterRegistry);
+        this.syncErrors = Counter.builder("gateway.ratelimiter.redis.sync.errors")
+                .description("Batches that could not be written to Redis")
+                .register(meterRegistry);
+        Gauge.builder("gateway.ratelimiter.keys", buckets, Cache::estimatedSize)
+                .description("Rate limiter keys with a bucket on this node")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void startSync() {
+        syncTask = Flux.interval(syncInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> sync(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stopSync() {
+        if (syncTask != null)
+            syncTask.dispose();
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        Config config = getConfig().get(routeId);
+        if (config == null)
+            throw new IllegalArgumentException("No Configuration found for route " + routeId);
+
+        Bucket bucket = buckets.get(routeId + "." + id, Bucket::new);
+        long remaining = bucket.tryConsume(config, System.nanoTime(), System.currentTimeMillis());
+        boolean allowed = remaining >= 0;
+
+        decisions.computeIfAbsent(routeId + (allowed ? ".allowed" : ".denied"), key -> Counter
+                        .builder("gateway.ratelimiter.requests")
+                        .tag("route", routeId)
+                        .tag("result", allowed ? "allowed" : "denied")
+                        .register(meterRegistry))
+                .increment();
+
+        return Mono.just(new Response(allowed, headers(config, Math.max(remaining, 0))));
+    }
+
+    Mono<Void> sync() {
+        List<Bucket> dirty = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+
+        for (Bucket bucket : buckets.asMap().values()) {
+            long consumed = bucket.drainPending();
+            if (consumed > 0) {
+                dirty.add(bucket);
+                keys.add("hybrid_rate_limiter.{" + bucket.key + "}");
+                args.add(Long.toString(consumed));
+                args.add(Integer.toString(bucket.replenishRate));
+                args.add(Integer.toString(bucket.burstCapacity));
+            }
+        }
+
+        if (dirty.isEmpty())
+            return Mono.empty();
+
+        syncs.increment();
+
+        return redisTemplate.execute(syncScript, keys, args)
+                .next()
+                .doOnNext(remaining -> {
+                    long now = System.currentTimeMillis();
+                    for (int i = 0; i < dirty.size(); i++)
+                        dirty.get(i).applyGlobal(remaining.get(i), now);
+                })
+                .then()
+                .onErrorResume(throwable -> {
+                    syncErrors.increment();
+                    log.warn("Could not sync rate limiter buckets to Redis: {}", throwable.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private Map<String, String> headers(Config config, long remaining) {
+        return Map.of(
+                "X-RateLimit-Remaining", Long.toString(remaining),
+                "X-RateLimit-Replenish-Rate", Integer.toString(config.getReplenishRate()),
+                "X-RateLimit-Burst-Capacity", Integer.toString(config.getBurstCapacity()),
+                "X-RateLimit-Requested-Tokens", Integer.toString(config.getRequestedTokens()));
+    }
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Config {
+        int replenishRate;
+        int burstCapacity;
+        int requestedTokens = 1;
+    }
+
+    static final class Bucket {
+        final String key;
+        double tokens;
+        long lastRefillNanos;
+        long pending;
+        boolean initialized;
+        int replenishRate;
+        int burstCapacity;
+        volatile long blockedUntilMillis;
+
+        Bucket(String key) {
+            this.key = key;
+        }
+
+        // Returns the tokens left after consuming, or -1 when the request is denied
+        synchronized long tryConsume(Config config, long nowNanos, long nowMillis) {
+            replenishRate = config.getReplenishRate();
+            burstCapacity = config.getBurstCapacity();
+            if (nowMillis < blockedUntilMillis)
+                return -1;
+
+            if (!initialized) {
+                tokens = config.getBurstCapacity();
+                initialized = true;
+            } else {
+                double refill = (nowNanos - lastRefillNanos) * config.getReplenishRate() / 1_000_000_000d;
+                tokens = Math.min(config.getBurstCapacity(), tokens + refill);
+            }
+            lastRefillNanos = nowNanos;
+
+            if (tokens < config.getRequestedTokens())
+                return -1;
+
+            tokens -= config.getRequestedTokens();
+            pending += config.getRequestedTokens();
+            return (long) tokens;
+        }
+
+        synchronized long drainPending() {
+            long consumed = pending;
+            pending = 0;
+            return consumed;
+        }
+
+        // Caps the local bucket at what is left globally, or denies until an overdrawn global bucket is repaid
+        synchronized void applyGlobal(long globalTokens, long nowMillis) {
+            if (globalTokens >= 0) {
+                tokens = Math.min(tokens, globalTokens);
+                return;
+            }
+
+            tokens = 0;
+            if (replenishRate > 0)
+                blockedUntilMillis = nowMillis + (-globalTokens * 1000 + replenishRate - 1) / replenishRate;
+        }
+    }
+}
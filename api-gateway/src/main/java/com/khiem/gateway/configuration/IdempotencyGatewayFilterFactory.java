@@ -0,0 +1,338 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.dto.IdempotentResponse;
+import com.khiem.gateway.dto.VerifiedToken;
+import com.khiem.gateway.service.IdempotencyStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Answers repeated requests carrying the same {@code Idempotency-Key} with the response of the first
+ * one instead of forwarding them again.
+ *
+ * <p>The first request claims the key in {@link IdempotencyStore} and its status and body are stored for
+ * {@code ttl}. Duplicates arriving while it is in flight wait for it, on this node directly and on other
+ * nodes by polling Redis, and get a 409 when it fails or takes longer than {@code wait-timeout}. Failed
+ * first attempts (errors, 5xx) are not stored, so the client can retry them. Keys are scoped per route
+ * and per authenticated subject.
+ *
+ * <p>A key reused for a different method, path, query or body gets a 422. The body is compared by a
+ * SHA-256 digest taken while it streams, so neither requests nor responses are buffered for it; responses
+ * larger than {@code max-body-bytes} are streamed through without being stored.
+ *
+ * <p>The in-flight claim expires after {@code lock-timeout}, which should exceed the route's slowest
+ * response. When Redis is unreachable requests are forwarded as if they carried no key.
+ */
+@Slf4j
+@Component
+public class IdempotencyGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<IdempotencyGatewayFilterFactory.Config> {
+    public static final String KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyStore store;
+    private final MeterRegistry meterRegistry;
+
+    // First requests in flight on this node, duplicates arriving here wait on them instead of polling Redis
+    private final ConcurrentMap<String, Sinks.One<IdempotentResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyGatewayFilterFactory(IdempotencyStore store, MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.store = store;
+        this.meterRegistry = meterRegistry;
+    }
+
+    private enum Claim { FIRST, DUPLICATE, UNAVAILABLE }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        Counter first = requests(config, "first");
+        Counter replayed = requests(config, "replayed");
+        Counter conflict = requests(config, "conflict");
+        Counter mismatch = requests(config, "mismatch");
+        Counter unavailable = requests(config, "unavailable");
+
+        return new OrderedGatewayFilter(new GatewayFilter() {
+            @Override
+            public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+                ServerHttpRequest request = exchange.getRequest();
+                String idempotencyKey = request.getHeaders().getFirst(KEY_HEADER);
+                if (idempotencyKey == null || !config.getMethods().contains(request.getMethod()))
+                    return chain.filter(exchange);
+                if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH)
+                    return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Idempotency-Key"));
+
+                String key = key(exchange, config, idempotencyKey);
+                String requestLine = requestLine(request);
+                return store.claim(key, requestLine, config.getLockTimeout())
+                        .map(claimed -> claimed ? Claim.FIRST : Claim.DUPLICATE)
+                        .onErrorResume(throwable -> {
+                            log.warn("Could not claim idempotency key, forwarding without it: {}", throwable.getMessage());
+                            return Mono.just(Claim.UNAVAILABLE);
+                        })
+                        .flatMap(claim -> switch (claim) {
+                            case FIRST -> {
+                                first.increment();
+                                yield forward(exchange, chain, key, requestLine);
+                            }
+                            case DUPLICATE -> digest(request.getBody())
+                                    .flatMap(bodyDigest -> duplicate(exchange, key, requestLine + " " + bodyDigest));
+                            case UNAVAILABLE -> {
+                                unavailable.increment();
+                                yield chain.filter(exchange);
+                            }
+                        });
+            }
+
+            private Mono<Void> forward(ServerWebExchange exchange, GatewayFilterChain chain, String key, String requestLine) {
+                Sinks.One<IdempotentResponse> sink = Sinks.one();
+                inFlight.put(key, sink);
+                AtomicReference<IdempotentResponse> stored = new AtomicReference<>();
+                AtomicReference<String> bodyDigest = new AtomicReference<>();
+
+                return chain.filter(exchange.mutate()
+                                .request(digesting(exchange.getRequest(), bodyDigest))
+                                .response(capture(exchange, key, requestLine, bodyDigest, stored))
+                                .build())
+                        .doFinally(signal -> {
+                            inFlight.remove(key, sink);
+                            IdempotentResponse response = stored.get();
+                            if (response != null) {
+                                sink.tryEmitValue(response);
+                                return;
+                            }
+                            sink.tryEmitEmpty();
+                            store.release(key)
+                                    .onErrorResume(throwable -> {
+                                        log.warn("Could not release idempotency key: {}", throwable.getMessage());
+                                        return Mono.empty();
+                                    })
+                                    .subscribe();
+                        });
+            }
+
+            // Stores a successful response before writing it, so a retry after the client got it finds it. Buffers
+            // are held only until the body passes max-body-bytes, the rest of a larger body streams through
+            private ServerHttpResponseDecorator capture(ServerWebExchange exchange, String key, String requestLine,
+                                                        AtomicReference<String> bodyDigest,
+                                                        AtomicReference<IdempotentResponse> stored) {
+                return new ServerHttpResponseDecorator(exchange.getResponse()) {
+                    @Override
+                    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                        HttpStatusCode status = getStatusCode();
+                        if (status == null || status.is5xxServerError())
+                            return getDelegate().writeWith(body);
+
+                        AtomicLong size = new AtomicLong();
+                        return getDelegate().writeWith(Flux.<DataBuffer>from(body)
+                                .bufferUntil(buffer -> size.addAndGet(buffer.readableByteCount()) > config.getMaxBodyBytes())
+                                .<DataBuffer>switchOnFirst((first, chunks) -> {
+                                    if (size.get() > config.getMaxBodyBytes() || !(first.hasValue() || first.isOnComplete()))
+                                        return chunks.flatMapIterable(buffers -> buffers);
+
+                                    byte[] bytes = first.hasValue() ? read(first.get()) : new byte[0];
+                                    return complete(status, bytes)
+                                            .then(Mono.just(bufferFactory().wrap(bytes)));
+                                })
+                                .doOnDiscard(DataBuffer.class, DataBufferUtils::release));
+                    }
+
+                    private Mono<Void> complete(HttpStatusCode status, byte[] bytes) {
+                        // The upstream answered before reading the whole request, so it can't be told apart
+                        if (bodyDigest.get() == null)
+                            return Mono.empty();
+
+                        IdempotentResponse response = IdempotentResponse.builder()
+                                .fingerprint(requestLine + " " + bodyDigest.get())
+                                .status(status.value())
+                                .contentType(getHeaders().getFirst(HttpHeaders.CONTENT_TYPE))
+                                .body(bytes)
+                                .build();
+                        return store.complete(key, response, config.getTtl())
+                                .doOnSuccess(done -> stored.set(response))
+                                .onErrorResume(throwable -> {
+                                    log.warn("Could not store idempotent response: {}", throwable.getMessage());
+                                    return Mono.empty();
+                                });
+                    }
+                };
+            }
+
+            private Mono<Void> duplicate(ServerWebExchange exchange, String key, String fingerprint) {
+                Sinks.One<IdempotentResponse> local = inFlight.get(key);
+                Mono<IdempotentResponse> completed = local != null ? local.asMono() : awaitCompletion(key);
+
+                return completed
+                        .timeout(config.getWaitTimeout(), Mono.empty())
+                        .onErrorResume(throwable -> Mono.empty())
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(found -> {
+                            if (found.isEmpty()) {
+                                conflict.increment();
+                                return Mono.<Void>error(new ResponseStatusException(HttpStatus.CONFLICT,
+                                        "A request with this Idempotency-Key is in progress or failed, retry it"));
+                            }
+                            if (!fingerprint.equals(found.get().getFingerprint())) {
+                                mismatch.increment();
+                                return Mono.<Void>error(new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                                        "Idempotency-Key was already used for a different request"));
+                            }
+                            replayed.increment();
+                            return replay(exchange, found.get());
+                        });
+            }
+
+            // Polls Redis until the first request on another node completes, empty once its claim is gone
+            private Mono<IdempotentResponse> awaitCompletion(String key) {
+                return store.find(key)
+                        .flatMap(found -> found.isInFlight()
+                                ? Mono.delay(config.getPollInterval()).then(Mono.defer(() -> awaitCompletion(key)))
+                                : Mono.just(found));
+            }
+        }, FilterOrder.RESPONSE_DECORATOR);
+    }
+
+    // Digests the body as the upstream request reads it, each subscription starts over
+    private static ServerHttpRequest digesting(ServerHttpRequest request, AtomicReference<String> bodyDigest) {
+        return new ServerHttpRequestDecorator(request) {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                return Flux.defer(() -> {
+                    MessageDigest digest = sha256();
+                    return getDelegate().getBody()
+                            .doOnNext(buffer -> update(digest, buffer))
+                            .doOnComplete(() -> bodyDigest.set(HexFormat.of().formatHex(digest.digest())));
+                });
+            }
+        };
+    }
+
+    // Reads a duplicate's body only to digest it, buffers are released as they arrive
+    private static Mono<String> digest(Flux<DataBuffer> body) {
+        return Mono.defer(() -> {
+            MessageDigest digest = sha256();
+            return body.doOnNext(buffer -> {
+                        update(digest, buffer);
+                        DataBufferUtils.release(buffer);
+                    })
+                    .then(Mono.fromSupplier(() -> HexFormat.of().formatHex(digest.digest())));
+        });
+    }
+
+    private static void update(MessageDigest digest, DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext())
+                digest.update(iterator.next());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] read(List<DataBuffer> buffers) {
+        byte[] bytes = new byte[buffers.stream().mapToInt(DataBuffer::readableByteCount).sum()];
+        int offset = 0;
+        for (DataBuffer buffer : buffers) {
+            int length = buffer.readableByteCount();
+            buffer.read(bytes, offset, length);
+            offset += length;
+            DataBufferUtils.release(buffer);
+        }
+        return bytes;
+    }
+
+    private static String requestLine(ServerHttpRequest request) {
+        String query = request.getURI().getRawQuery();
+        return request.getMethod().name() + " " + request.getURI().getRawPath() + (query != null ? "?" + query : "");
+    }
+
+    private static Mono<Void> replay(ServerWebExchange exchange, IdempotentResponse stored) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatusCode.valueOf(stored.getStatus()));
+        if (stored.getContentType() != null)
+            response.getHeaders().set(HttpHeaders.CONTENT_TYPE, stored.getContentType());
+        response.getHeaders().set(REPLAYED_HEADER, "true");
+
+        byte[] body = stored.getBody() != null ? stored.getBody() : new byte[0];
+        response.getHeaders().setContentLength(body.length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+
+    private static String key(ServerWebExchange exchange, Config config, String idempotencyKey) {
+        VerifiedToken verifiedToken = exchange.getAttribute(AuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE);
+        String subject = verifiedToken != null ? verifiedToken.getSubject() : "anonymous";
+        return config.getRouteId() + ":" + subject + ":" + idempotencyKey;
+    }
+
+    private Counter requests(Config config, String result) {
+        return Counter.builder("gateway.idempotency.requests")
+                .description("Requests carrying an Idempotency-Key, by how they were answered")
+                .tag("route", config.getRouteId())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Config implements HasRouteId {
+        String routeId;
+
+        List<HttpMethod> methods = List.of(HttpMethod.POST);
+
+        // How long a stored response is replayed
+        Duration ttl = Duration.ofHours(24);
+
+        // How long the first request holds the key before duplicates are forwarded again
+        Duration lockTimeout = Duration.ofSeconds(30);
+
+        Duration waitTimeout = Duration.ofSeconds(10);
+        Duration pollInterval = Duration.ofMillis(50);
+
+        // Larger responses are passed through without being stored
+        int maxBodyBytes = 1048576;
+    }
+}
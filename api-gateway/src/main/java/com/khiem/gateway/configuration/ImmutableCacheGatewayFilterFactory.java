@@ -0,0 +1,210 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.dto.ImmutableContent;
+import com.khiem.gateway.service.ImmutableContentCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Serves GET responses of a route whose content never changes, such as uploaded files, from
+ * {@link ImmutableContentCache}, and tells clients to keep them for {@code max-age} without revalidating.
+ *
+ * <p>Single byte ranges are answered from the cached bytes with a 206, so media players seeking in a
+ * cached file don't reach the upstream either. A miss is fetched in full and stored, except for a range
+ * that doesn't start at 0, which is forwarded as it is; the first full download fills the cache.
+ */
+@Component
+public class ImmutableCacheGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<ImmutableCacheGatewayFilterFactory.Config> {
+    private final ImmutableContentCache cache;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypasses;
+
+    public ImmutableCacheGatewayFilterFactory(ImmutableContentCache cache, MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.cache = cache;
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.bypasses = requests(meterRegistry, "bypass");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return new OrderedGatewayFilter((exchange, chain) -> filter(exchange, chain, config),
+                FilterOrder.RESPONSE_DECORATOR);
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain, Config config) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (request.getMethod() != HttpMethod.GET)
+            return chain.filter(exchange);
+
+        String key = key(request);
+        ImmutableContent cached = cache.get(key);
+        if (cached != null) {
+            hits.increment();
+            return serve(exchange.getResponse(), request.getHeaders(), cached, "HIT", config);
+        }
+
+        String range = request.getHeaders().getFirst(HttpHeaders.RANGE);
+        if (range != null && !range.replace(" ", "").equals("bytes=0-")) {
+            bypasses.increment();
+            return chain.filter(exchange);
+        }
+
+        // Ranges and conditions are answered here from the full body, which is what gets stored
+        misses.increment();
+        ServerHttpRequest full = request.mutate()
+                .headers(headers -> {
+                    headers.remove(HttpHeaders.RANGE);
+                    headers.remove(HttpHeaders.IF_RANGE);
+                    headers.remove(HttpHeaders.IF_NONE_MATCH);
+                    headers.remove(HttpHeaders.IF_MODIFIED_SINCE);
+                })
+                .build();
+        return chain.filter(exchange.mutate()
+                .request(full)
+                .response(capture(exchange, key, config))
+                .build());
+    }
+
+    private ServerHttpResponseDecorator capture(ServerWebExchange exchange, String key, Config config) {
+        HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+
+        return new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                getHeaders().set(ResponseCacheGatewayFilterFactory.CACHE_STATUS_HEADER, "MISS");
+                if (!cache.isStorable(getStatusCode(), getHeaders())) {
+                    if (getStatusCode() != null && getStatusCode().value() == HttpStatus.OK.value())
+                        cacheHeaders(getHeaders(), config);
+                    return getDelegate().writeWith(body);
+                }
+
+                return DataBufferUtils.join(Flux.from(body))
+                        .defaultIfEmpty(bufferFactory().wrap(new byte[0]))
+                        .flatMap(joined -> {
+                            byte[] bytes = new byte[joined.readableByteCount()];
+                            joined.read(bytes);
+                            DataBufferUtils.release(joined);
+
+                            ImmutableContent stored = cache.store(key, getHeaders(), bytes);
+                            if (stored != null)
+                                return serve(getDelegate(), requestHeaders, stored, "MISS", config);
+
+                            cacheHeaders(getHeaders(), config);
+                            return getDelegate().writeWith(Mono.just(bufferFactory().wrap(bytes)));
+                        });
+            }
+        };
+    }
+
+    private static Mono<Void> serve(ServerHttpResponse response, HttpHeaders requestHeaders,
+                                    ImmutableContent content, String cacheStatus, Config config) {
+        HttpHeaders headers = response.getHeaders();
+        if (content.getContentType() != null)
+            headers.set(HttpHeaders.CONTENT_TYPE, content.getContentType());
+        if (content.getContentDisposition() != null)
+            headers.set(HttpHeaders.CONTENT_DISPOSITION, content.getContentDisposition());
+        headers.set(HttpHeaders.ETAG, content.getEtag());
+        headers.set(ResponseCacheGatewayFilterFactory.CACHE_STATUS_HEADER, cacheStatus);
+        cacheHeaders(headers, config);
+
+        String ifNoneMatch = requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && ifNoneMatch.contains(content.getEtag())) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            return response.setComplete();
+        }
+
+        byte[] body = content.getBody();
+        HttpRange range = range(requestHeaders, content.getEtag());
+        if (range == null) {
+            response.setStatusCode(HttpStatus.OK);
+            headers.setContentLength(body.length);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+        }
+
+        long start = range.getRangeStart(body.length);
+        if (start >= body.length) {
+            response.setStatusCode(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + body.length);
+            headers.setContentLength(0);
+            return response.setComplete();
+        }
+
+        // The slice shares the cached array, nothing is copied
+        long end = range.getRangeEnd(body.length);
+        int length = (int) (end - start + 1);
+        response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + body.length);
+        headers.setContentLength(length);
+        return response.writeWith(Mono.just(response.bufferFactory()
+                .wrap(ByteBuffer.wrap(body, (int) start, length).slice())));
+    }
+
+    // The single range to answer, null when the whole body should be sent
+    private static HttpRange range(HttpHeaders requestHeaders, String etag) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(etag))
+            return null;
+
+        try {
+            List<HttpRange> ranges = requestHeaders.getRange();
+            // Several ranges would need a multipart body, the whole file is just as valid an answer
+            return ranges.size() == 1 ? ranges.getFirst() : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void cacheHeaders(HttpHeaders headers, Config config) {
+        headers.setCacheControl("public, max-age=" + config.getMaxAge().toSeconds() + ", immutable");
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+    }
+
+    private static String key(ServerHttpRequest request) {
+        String query = request.getURI().getRawQuery();
+        return query != null ? request.getURI().getRawPath() + '?' + query : request.getURI().getRawPath();
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gateway.immutable.cache.requests")
+                .description("GET requests seen by the immutable cache filter")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Config {
+        // How long clients keep the content without asking again
+        Duration maxAge = Duration.ofDays(365);
+    }
+}
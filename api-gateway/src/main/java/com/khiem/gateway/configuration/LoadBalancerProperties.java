@@ -0,0 +1,60 @@
+package com.khiem.gateway.configuration;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.load-balancer")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class LoadBalancerProperties {
+    // Instances per service, a route with uri instances://<service> is balanced across them
+    Map<String, List<URI>> services = new LinkedHashMap<>();
+
+    // How long a latency sample keeps its weight in the EWMA
+    Duration decayTime = Duration.ofSeconds(10);
+
+    // Latency assumed for an instance until it first answers
+    Duration initialRtt = Duration.ofMillis(100);
+
+    // Latency a failed request counts as at least, so an instance failing fast isn't chosen for being fast
+    Duration failurePenalty = Duration.ofSeconds(1);
+
+    Ejection ejection = new Ejection();
+
+    ConsistentHash consistentHash = new ConsistentHash();
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Ejection {
+        // Errors or 5xx answers in a row that take an instance out of rotation
+        int consecutiveFailures = 5;
+
+        // Multiplied by the number of times the instance was ejected in a row
+        Duration baseTime = Duration.ofSeconds(30);
+        Duration maxTime = Duration.ofMinutes(5);
+
+        // Never eject more than this share of a service's instances
+        int maxPercent = 50;
+    }
+
+    // For routes with load-balancing: consistent-hash in their metadata
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class ConsistentHash {
+        // Points per instance on the ring, more spread keys more evenly
+        int virtualNodes = 160;
+
+        // An instance takes new keys while it has at most this many times the average requests in flight
+        double loadFactor = 1.25;
+    }
+}
@@ -0,0 +1,71 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.PriorityAdmission;
+import com.khiem.gateway.service.PriorityAdmission.Priority;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.DispatcherHandler;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Admits every routed request through {@link PriorityAdmission}, with the priority taken from the
+ * route's {@code priority} metadata ({@code critical}, {@code normal} or {@code bulk}). Shed requests
+ * are answered by {@code /fallback} with a 503.
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class PriorityAdmissionFilter implements GlobalFilter, Ordered {
+    public static final String PRIORITY_METADATA = "priority";
+
+    PriorityAdmission admission;
+    AdmissionProperties properties;
+    ObjectProvider<DispatcherHandler> dispatcherHandler;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!properties.isEnabled())
+            return chain.filter(exchange);
+
+        return admission.admit(priority(exchange)).flatMap(admitted -> {
+            if (!admitted)
+                return fallback(exchange);
+            return chain.filter(exchange).doFinally(signal -> admission.release());
+        });
+    }
+
+    @Override
+    public int getOrder() {
+        return FilterOrder.ADMISSION;
+    }
+
+    private Priority priority(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        Object priority = route != null ? route.getMetadata().get(PRIORITY_METADATA) : null;
+        if (priority == null)
+            return properties.getDefaultPriority();
+
+        try {
+            return Priority.valueOf(priority.toString().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return properties.getDefaultPriority();
+        }
+    }
+
+    private Mono<Void> fallback(ServerWebExchange exchange) {
+        ServerWebExchange forwarded = exchange.mutate()
+                .request(exchange.getRequest().mutate().path(AdaptiveConcurrencyGatewayFilterFactory.FALLBACK_PATH).build())
+                .build();
+        return dispatcherHandler.getObject().handle(forwarded);
+    }
+}
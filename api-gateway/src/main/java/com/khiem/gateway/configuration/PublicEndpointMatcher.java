@@ -0,0 +1,46 @@
+package com.khiem.gateway.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Decides whether a request may skip authentication. Patterns are parsed once from
+ * {@code app.auth.public-endpoints}, so a lookup is a handful of {@link PathPattern} matches against the
+ * already parsed request path.
+ */
+@Component
+public class PublicEndpointMatcher {
+    private final List<Rule> rules;
+
+    public PublicEndpointMatcher(PublicEndpointProperties properties, @Value("${app.api-prefix}") String apiPrefix) {
+        PathPatternParser parser = PathPatternParser.defaultInstance;
+        this.rules = properties.getPublicEndpoints().stream()
+                .map(endpoint -> new Rule(
+                        parser.parse(apiPrefix + endpoint.getPath()),
+                        endpoint.getMethods().stream().map(HttpMethod::valueOf).collect(Collectors.toUnmodifiableSet())))
+                .toList();
+    }
+
+    public boolean matches(ServerHttpRequest request) {
+        PathContainer path = request.getPath().pathWithinApplication();
+        HttpMethod method = request.getMethod();
+
+        for (Rule rule : rules) {
+            if ((rule.methods().isEmpty() || rule.methods().contains(method)) && rule.pattern().matches(path))
+                return true;
+        }
+        return false;
+    }
+
+    private record Rule(PathPattern pattern, Set<HttpMethod> methods) {
+    }
+}
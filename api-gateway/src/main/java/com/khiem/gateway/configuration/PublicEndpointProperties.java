@@ -0,0 +1,28 @@
+package com.khiem.gateway.configuration;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.auth")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class PublicEndpointProperties {
+    List<PublicEndpoint> publicEndpoints = new ArrayList<>();
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class PublicEndpoint {
+        // PathPattern relative to app.api-prefix, e.g. /file/media/download/**
+        String path;
+
+        // Empty means every method
+        List<String> methods = new ArrayList<>();
+    }
+}
@@ -1,8 +1,10 @@
 package com.khiem.gateway.configuration;
 
+import com.khiem.gateway.dto.VerifiedToken;
 import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import reactor.core.publisher.Mono;
 
 @Configuration
@@ -13,5 +15,19 @@ public class RateLimiterConfig {
                 .map(addr -> addr.getAddress().getHostAddress())
                 .defaultIfEmpty("unknown");
     }
-}
 
+    // Limits authenticated users by JWT subject so users behind one NAT don't share a bucket,
+    // anonymous requests still fall back to the client IP
+    @Bean
+    @Primary
+    public KeyResolver principalKeyResolver() {
+        KeyResolver ipKeyResolver = ipKeyResolver();
+        return exchange -> {
+            VerifiedToken verifiedToken = exchange.getAttribute(AuthenticationFilter.VERIFIED_TOKEN_ATTRIBUTE);
+            if (verifiedToken != null && verifiedToken.getSubject() != null)
+                return Mono.just("user:" + verifiedToken.getSubject());
+
+            return ipKeyResolver.resolve(exchange).map(ip -> "ip:" + ip);
+        };
+    }
+}
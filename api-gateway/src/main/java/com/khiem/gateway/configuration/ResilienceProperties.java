@@ -0,0 +1,71 @@
+package com.khiem.gateway.configuration;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.resilience")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ResilienceProperties {
+    private static final RouteResilience DEFAULTS = new RouteResilience();
+
+    // Circuit breaker and fallback per route id, routes not listed use the defaults below
+    Map<String, RouteResilience> routes = new HashMap<>();
+
+    // Requests in flight per downstream service before more are answered by the fallback, 0 for no cap
+    int defaultBulkhead = 200;
+    Map<String, Integer> bulkheads = new HashMap<>();
+
+    public RouteResilience route(String routeId) {
+        return routes.getOrDefault(routeId, DEFAULTS);
+    }
+
+    public int bulkhead(String service) {
+        return bulkheads.getOrDefault(service, defaultBulkhead);
+    }
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class RouteResilience {
+        CircuitBreaker circuitBreaker = new CircuitBreaker();
+        Fallback fallback = new Fallback();
+    }
+
+    // Defaults are resilience4j's, which every route shared before
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class CircuitBreaker {
+        // Share of failed or slow calls, in percent, that opens the breaker
+        float failureRateThreshold = 50;
+        float slowCallRateThreshold = 100;
+        Duration slowCallDuration = Duration.ofSeconds(60);
+
+        // Calls the rates are computed over, and how many are needed before the breaker may open
+        int slidingWindowSize = 100;
+        int minimumNumberOfCalls = 100;
+
+        Duration waitInOpenState = Duration.ofSeconds(60);
+        int permittedCallsInHalfOpenState = 10;
+
+        // Upstream calls taking longer fail and count as failures
+        Duration timeout = Duration.ofSeconds(1);
+    }
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Fallback {
+        int status = 503;
+        String message = "Service temporarily unavailable";
+
+        // Sent as Retry-After when set
+        Duration retryAfter;
+    }
+}
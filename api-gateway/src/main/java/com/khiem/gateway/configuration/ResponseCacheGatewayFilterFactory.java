@@ -0,0 +1,199 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.dto.CachedResponse;
+import com.khiem.gateway.service.ResponseCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+/**
+ * Serves GET responses of a route from {@link ResponseCache}.
+ *
+ * <p>Entries are keyed by path, query and the configured request headers. Fresh entries are answered
+ * directly, with a 304 when the client's If-None-Match matches. Stale entries are answered while one
+ * background request refreshes them. Upstream {@code Cache-Control} decides what is stored and for how
+ * long, the route's {@code ttl} and {@code stale-while-revalidate} are only defaults. Any other method
+ * answered with a 2xx evicts the entries of its path, so routes that accept mutations keep the filter.
+ */
+@Component
+public class ResponseCacheGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<ResponseCacheGatewayFilterFactory.Config> {
+    public static final String CACHE_STATUS_HEADER = "X-Cache";
+
+    private final ResponseCache responseCache;
+    private final Counter hits;
+    private final Counter staleHits;
+    private final Counter misses;
+    private final Counter bypasses;
+
+    public ResponseCacheGatewayFilterFactory(ResponseCache responseCache, MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.responseCache = responseCache;
+        this.hits = requests(meterRegistry, "hit");
+        this.staleHits = requests(meterRegistry, "stale");
+        this.misses = requests(meterRegistry, "miss");
+        this.bypasses = requests(meterRegistry, "bypass");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return new OrderedGatewayFilter((exchange, chain) -> filter(exchange, chain, config),
+                FilterOrder.RESPONSE_DECORATOR);
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain, Config config) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (request.getMethod() == HttpMethod.HEAD || request.getMethod() == HttpMethod.OPTIONS)
+            return chain.filter(exchange);
+        if (request.getMethod() != HttpMethod.GET)
+            return chain.filter(exchange).doOnSuccess(done -> {
+                HttpStatusCode status = exchange.getResponse().getStatusCode();
+                if (status != null && status.is2xxSuccessful())
+                    responseCache.evict(request.getURI().getRawPath());
+            });
+
+        Map<String, String> directives = ResponseCache.cacheControl(request.getHeaders());
+        if (directives.containsKey("no-store")) {
+            bypasses.increment();
+            return chain.filter(exchange);
+        }
+
+        String key = key(request, config);
+        CachedResponse cached = directives.containsKey("no-cache") ? null : responseCache.get(key);
+        Instant now = Instant.now();
+
+        if (cached != null && now.isBefore(cached.getFreshUntil())) {
+            hits.increment();
+            return serve(exchange, cached, "HIT");
+        }
+
+        if (cached != null && now.isBefore(cached.getStaleUntil())) {
+            staleHits.increment();
+            responseCache.revalidate(key, cached, config.getTtl(), config.getStaleWhileRevalidate());
+            return serve(exchange, cached, "STALE");
+        }
+
+        misses.increment();
+        return chain.filter(exchange.mutate().response(capture(exchange, key, config)).build());
+    }
+
+    private Mono<Void> serve(ServerWebExchange exchange, CachedResponse cached, String cacheStatus) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.addAll(cached.getHeaders());
+        headers.set(HttpHeaders.ETAG, cached.getEtag());
+        headers.set(HttpHeaders.AGE, Long.toString(Duration.between(cached.getStoredAt(), Instant.now()).toSeconds()));
+        headers.set(CACHE_STATUS_HEADER, cacheStatus);
+
+        String ifNoneMatch = exchange.getRequest().getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && ifNoneMatch.contains(cached.getEtag())) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+
+        response.setStatusCode(cached.getStatus());
+        headers.setContentLength(cached.getBody().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.getBody())));
+    }
+
+    // Buffers a cacheable upstream response so it can be stored before it is written to the client
+    private ServerHttpResponseDecorator capture(ServerWebExchange exchange, String key, Config config) {
+        HttpHeaders requestHeaders = varyHeaders(exchange.getRequest(), config);
+
+        return new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                getHeaders().set(CACHE_STATUS_HEADER, "MISS");
+                if (!responseCache.isStorable(getStatusCode(), getHeaders()))
+                    return getDelegate().writeWith(body);
+
+                return DataBufferUtils.join(Flux.from(body))
+                        .defaultIfEmpty(bufferFactory().wrap(new byte[0]))
+                        .flatMap(joined -> {
+                            byte[] bytes = new byte[joined.readableByteCount()];
+                            joined.read(bytes);
+                            DataBufferUtils.release(joined);
+
+                            // Revalidation goes through the load balancer again rather than to this instance
+                            URI upstreamUri = exchange.getAttributeOrDefault(UpstreamLoadBalancerFilter.BALANCED_URL_ATTRIBUTE,
+                                    exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR));
+                            CachedResponse stored = responseCache.store(key, getStatusCode(), getHeaders(), bytes,
+                                    upstreamUri, requestHeaders, config.getTtl(), config.getStaleWhileRevalidate());
+                            if (stored != null)
+                                getHeaders().set(HttpHeaders.ETAG, stored.getEtag());
+
+                            return getDelegate().writeWith(Mono.just(bufferFactory().wrap(bytes)));
+                        });
+            }
+        };
+    }
+
+    private static String key(ServerHttpRequest request, Config config) {
+        StringBuilder key = new StringBuilder(request.getURI().getRawPath());
+        if (request.getURI().getRawQuery() != null)
+            key.append('?').append(request.getURI().getRawQuery());
+
+        for (String header : config.getVaryHeaders())
+            key.append('|').append(header).append('=').append(request.getHeaders().getOrEmpty(header));
+
+        return key.toString();
+    }
+
+    private static HttpHeaders varyHeaders(ServerHttpRequest request, Config config) {
+        HttpHeaders headers = new HttpHeaders();
+        for (String header : config.getVaryHeaders()) {
+            List<String> values = request.getHeaders().get(header);
+            if (values != null)
+                headers.put(header, List.copyOf(values));
+        }
+        return headers;
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gateway.response.cache.requests")
+                .description("GET requests seen by the response cache filter")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Config {
+        // Used when the upstream response has no max-age
+        Duration ttl = Duration.ofSeconds(30);
+
+        // Used when the upstream response has no stale-while-revalidate
+        Duration staleWhileRevalidate = Duration.ofSeconds(60);
+
+        // Request headers that change the response and therefore take part in the cache key
+        List<String> varyHeaders = List.of(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_LANGUAGE);
+    }
+}
@@ -0,0 +1,149 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.RetryBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.reset;
+
+/**
+ * Retries failed requests of a route while its {@link RetryBudget} allows, in place of the fixed count of
+ * the built-in Retry filter. Each retry waits a random backoff between zero and
+ * {@code first-backoff * 2^attempt} (capped at {@code max-backoff}), so clients failing together don't
+ * come back together.
+ *
+ * <p>Request bodies aren't buffered, so {@code methods} should only list methods without one.
+ */
+@Component
+public class RetryBudgetGatewayFilterFactory extends AbstractGatewayFilterFactory<RetryBudgetGatewayFilterFactory.Config> {
+    private final MeterRegistry meterRegistry;
+
+    public RetryBudgetGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        RetryBudget budget = new RetryBudget(config.getRatio(), config.getMinRetriesPerSecond(),
+                config.getWindow(), config.getSlots());
+        Counter retried = retries(config, "retried");
+        Counter budgetExhausted = retries(config, "budget-exhausted");
+
+        return new GatewayFilter() {
+            @Override
+            public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+                if (!config.getMethods().contains(exchange.getRequest().getMethod()))
+                    return chain.filter(exchange);
+                return attempt(exchange, chain, 0);
+            }
+
+            private Mono<Void> attempt(ServerWebExchange exchange, GatewayFilterChain chain, int retry) {
+                return chain.filter(exchange)
+                        .materialize()
+                        .flatMap(signal -> {
+                            if (signal.isOnError()) {
+                                Throwable throwable = signal.getThrowable();
+                                return isRetryable(throwable)
+                                        ? retry(exchange, chain, retry, Mono.error(throwable))
+                                        : Mono.<Void>error(throwable);
+                            }
+                            if (!isRetryable(exchange.getResponse().getStatusCode())) {
+                                budget.recordSuccess();
+                                return Mono.<Void>empty();
+                            }
+                            return retry(exchange, chain, retry, Mono.empty());
+                        });
+            }
+
+            // Answers with the failed outcome when out of retries, otherwise backs off and tries again
+            private Mono<Void> retry(ServerWebExchange exchange, GatewayFilterChain chain, int retry, Mono<Void> failure) {
+                if (retry >= config.getRetries() || exchange.getResponse().isCommitted())
+                    return failure;
+                if (!budget.tryAcquire()) {
+                    budgetExhausted.increment();
+                    return failure;
+                }
+
+                retried.increment();
+                discardResponse(exchange);
+                return Mono.delay(backoff(retry))
+                        .then(Mono.defer(() -> attempt(exchange, chain, retry + 1)));
+            }
+
+            private boolean isRetryable(HttpStatusCode status) {
+                return status != null && config.getStatuses().stream().anyMatch(retryable -> retryable.value() == status.value());
+            }
+
+            private boolean isRetryable(Throwable throwable) {
+                return config.getExceptions().stream().anyMatch(type -> type.isInstance(throwable));
+            }
+
+            private Duration backoff(int retry) {
+                long ceiling = Math.min(config.getMaxBackoff().toMillis(), config.getFirstBackoff().toMillis() << retry);
+                return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            }
+        };
+    }
+
+    // Drops the failed upstream response so the next attempt starts from a clean exchange
+    private static void discardResponse(ServerWebExchange exchange) {
+        Connection connection = exchange.getAttribute(CLIENT_RESPONSE_CONN_ATTR);
+        if (connection != null)
+            connection.dispose();
+        exchange.getAttributes().remove(CLIENT_RESPONSE_CONN_ATTR);
+        reset(exchange);
+        exchange.getResponse().setStatusCode(null);
+    }
+
+    private Counter retries(Config config, String result) {
+        return Counter.builder("gateway.retry.requests")
+                .description("Retry decisions made for failed requests")
+                .tag("route", config.getRouteId())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Data
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Config implements HasRouteId {
+        String routeId;
+
+        // Upper bound per request, the budget usually stops retries well before
+        int retries = 2;
+
+        // Retries may add this share of the route's successful requests over the window
+        double ratio = 0.1;
+        int minRetriesPerSecond = 1;
+        Duration window = Duration.ofSeconds(10);
+        int slots = 10;
+
+        Duration firstBackoff = Duration.ofMillis(50);
+        Duration maxBackoff = Duration.ofMillis(500);
+
+        List<HttpStatus> statuses = List.of(HttpStatus.BAD_GATEWAY, HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.GATEWAY_TIMEOUT);
+        List<HttpMethod> methods = List.of(HttpMethod.GET);
+        List<Class<? extends Throwable>> exceptions = List.of(IOException.class, TimeoutException.class);
+    }
+}
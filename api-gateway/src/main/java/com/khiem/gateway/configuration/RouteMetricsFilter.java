@@ -0,0 +1,102 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.RouteStatistics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Per-route request and error counts and latency histograms for the whole request, the upstream call and
+ * authentication. Also feeds {@link RouteStatistics} for the hotroutes actuator endpoint.
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RouteMetricsFilter implements GlobalFilter, Ordered {
+    MeterRegistry meterRegistry;
+    RouteStatistics routeStatistics;
+    Map<String, RouteMeters> meters = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        if (route == null)
+            return chain.filter(exchange);
+
+        long start = System.nanoTime();
+        return chain.filter(exchange).doFinally(signal -> {
+            if (signal == SignalType.CANCEL)
+                return;
+
+            long durationNanos = System.nanoTime() - start;
+            HttpStatusCode status = exchange.getResponse().getStatusCode();
+            boolean error = signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+            RouteMeters routeMeters = meters.computeIfAbsent(route.getId(), this::register);
+
+            routeMeters.requests().increment();
+            if (error)
+                routeMeters.errors().increment();
+            routeMeters.duration().record(durationNanos, TimeUnit.NANOSECONDS);
+
+            Long upstreamNanos = exchange.getAttribute(UpstreamTimingFilter.UPSTREAM_LATENCY_ATTRIBUTE);
+            if (upstreamNanos != null)
+                routeMeters.upstream().record(upstreamNanos, TimeUnit.NANOSECONDS);
+            Long authenticationNanos = exchange.getAttribute(AuthenticationFilter.AUTHENTICATION_LATENCY_ATTRIBUTE);
+            if (authenticationNanos != null)
+                routeMeters.authentication().record(authenticationNanos, TimeUnit.NANOSECONDS);
+
+            routeStatistics.record(route.getId(), durationNanos, error);
+        });
+    }
+
+    @Override
+    public int getOrder() {
+        return FilterOrder.ROUTE_METRICS;
+    }
+
+    private RouteMeters register(String routeId) {
+        return new RouteMeters(
+                Counter.builder("gateway.route.requests")
+                        .description("Requests completed by the route")
+                        .tag("route", routeId)
+                        .register(meterRegistry),
+                Counter.builder("gateway.route.errors")
+                        .description("Requests of the route that failed or answered 5xx")
+                        .tag("route", routeId)
+                        .register(meterRegistry),
+                timer("gateway.route.duration", "Whole request as seen by the gateway", routeId),
+                timer("gateway.route.upstream", "Until the upstream response headers arrived", routeId),
+                timer("gateway.route.authentication", "Token verification in AuthenticationFilter", routeId));
+    }
+
+    private Timer timer(String name, String description, String routeId) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("route", routeId)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private record RouteMeters(Counter requests, Counter errors, Timer duration, Timer upstream,
+                               Timer authentication) {
+    }
+}
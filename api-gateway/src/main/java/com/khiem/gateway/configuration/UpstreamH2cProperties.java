@@ -0,0 +1,19 @@
+package com.khiem.gateway.configuration;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.upstream.h2c")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class UpstreamH2cProperties {
+    // When off, routes with protocol: h2c in their metadata are sent over HTTP/1.1 like every other route
+    boolean enabled = true;
+
+    // Start with HTTP/2 frames instead of an HTTP/1.1 Upgrade, only for upstreams known to speak h2c
+    boolean priorKnowledge = false;
+}
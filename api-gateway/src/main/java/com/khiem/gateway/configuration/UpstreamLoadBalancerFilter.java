@@ -0,0 +1,101 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.UpstreamInstance;
+import com.khiem.gateway.service.UpstreamLoadBalancer;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.NotFoundException;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.addOriginalRequestUrl;
+
+/**
+ * Resolves route URIs of the form {@code instances://<service>} to one of the instances configured under
+ * {@code app.load-balancer.services}, and reports how the request went back to {@link UpstreamLoadBalancer}.
+ *
+ * <p>Routes with {@code load-balancing: consistent-hash} in their metadata send requests with the same
+ * {@code hash-key} query parameter to the same instance. Requests without it are balanced as usual.
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UpstreamLoadBalancerFilter implements GlobalFilter, Ordered {
+    public static final String SCHEME = "instances";
+    public static final String LOAD_BALANCING_METADATA = "load-balancing";
+    public static final String HASH_KEY_METADATA = "hash-key";
+
+    // Exchange attribute holding the UpstreamInstance the request was sent to
+    public static final String UPSTREAM_INSTANCE_ATTRIBUTE = UpstreamLoadBalancerFilter.class.getName() + ".instance";
+
+    // Exchange attribute holding the instances:// URL before it was resolved, for callers repeating the request
+    public static final String BALANCED_URL_ATTRIBUTE = UpstreamLoadBalancerFilter.class.getName() + ".balancedUrl";
+
+    // Exchange attribute set by filters that send the request upstream themselves and report every attempt
+    // to the load balancer, such as Hedge, so the outcome of the exchange isn't reported on top
+    public static final String ATTEMPTS_REPORTED_ATTRIBUTE = UpstreamLoadBalancerFilter.class.getName() + ".attemptsReported";
+
+    UpstreamLoadBalancer loadBalancer;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        if (url == null || !SCHEME.equals(url.getScheme()))
+            return chain.filter(exchange);
+
+        String hashKey = hashKey(exchange);
+        UpstreamInstance instance = hashKey != null
+                ? loadBalancer.choose(url.getHost(), hashKey)
+                : loadBalancer.choose(url.getHost());
+        if (instance == null)
+            return Mono.error(NotFoundException.create(false, "No instances configured for " + url.getHost()));
+
+        addOriginalRequestUrl(exchange, url);
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, UpstreamLoadBalancer.resolve(url, instance));
+        exchange.getAttributes().put(UPSTREAM_INSTANCE_ATTRIBUTE, instance);
+        exchange.getAttributes().put(BALANCED_URL_ATTRIBUTE, url);
+
+        long start = System.nanoTime();
+        return chain.filter(exchange).doFinally(signal -> {
+            if (exchange.getAttributeOrDefault(ATTEMPTS_REPORTED_ATTRIBUTE, false))
+                return;
+            if (signal == SignalType.CANCEL) {
+                loadBalancer.cancel(instance);
+                return;
+            }
+
+            HttpStatusCode status = exchange.getResponse().getStatusCode();
+            boolean failed = signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+            loadBalancer.complete(instance, System.nanoTime() - start, failed);
+        });
+    }
+
+    @Override
+    public int getOrder() {
+        return FilterOrder.LOAD_BALANCER;
+    }
+
+    private String hashKey(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        if (route == null || !"consistent-hash".equals(route.getMetadata().get(LOAD_BALANCING_METADATA)))
+            return null;
+
+        Object name = route.getMetadata().get(HASH_KEY_METADATA);
+        if (name == null)
+            return null;
+        String key = exchange.getRequest().getQueryParams().getFirst(name.toString());
+        return key != null && !key.isEmpty() ? key : null;
+    }
+}
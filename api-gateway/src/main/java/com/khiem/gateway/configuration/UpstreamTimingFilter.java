@@ -0,0 +1,27 @@
+package com.khiem.gateway.configuration;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+// Measures the upstream call of routed requests: from sending the request until the response headers arrived
+@Component
+public class UpstreamTimingFilter implements GlobalFilter, Ordered {
+    // Exchange attribute holding the upstream latency in nanoseconds, absent when no upstream was called
+    public static final String UPSTREAM_LATENCY_ATTRIBUTE = UpstreamTimingFilter.class.getName() + ".latency";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        long start = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signal -> exchange.getAttributes().put(UPSTREAM_LATENCY_ATTRIBUTE, System.nanoTime() - start));
+    }
+
+    @Override
+    public int getOrder() {
+        return FilterOrder.UPSTREAM_TIMING;
+    }
+}
@@ -1,6 +1,7 @@
 package com.khiem.gateway.configuration;
 
 import com.khiem.gateway.repository.IdentityClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.cors.CorsConfiguration;
@@ -14,9 +15,9 @@ import java.util.List;
 
 @Configuration
 public class WebClientConfiguration {    @Bean
-    WebClient webClient(){
+    WebClient webClient(@Value("${app.auth.identity-url:http://identity-service:8080/identity}") String identityUrl){
         return WebClient.builder()
-                .baseUrl("http://identity-service:8080/identity")
+                .baseUrl(identityUrl)
                 .build();
     }
 
@@ -1,14 +1,40 @@
 package com.khiem.gateway.controller;
 
+import com.khiem.gateway.configuration.ResilienceProperties;
+import com.khiem.gateway.dto.ApiResponse;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
 
 @RestController
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class FallbackController {
-    @GetMapping("/fallback")
-    public ResponseEntity<String> fallback() {
-        return ResponseEntity.status(503).body("service temporarily unavailable");
+    ResilienceProperties resilienceProperties;
+
+    // Any method can be forwarded here by the circuit breaker, the bulkheads or load shedding,
+    // the answer is the one configured for the route the request was meant for
+    @RequestMapping("/fallback")
+    public ResponseEntity<ApiResponse<?>> fallback(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        ResilienceProperties.Fallback fallback = resilienceProperties
+                .route(route != null ? route.getId() : null)
+                .getFallback();
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(fallback.getStatus());
+        if (fallback.getRetryAfter() != null)
+            response.header(HttpHeaders.RETRY_AFTER, Long.toString(fallback.getRetryAfter().toSeconds()));
+        return response.body(ApiResponse.builder()
+                .code(fallback.getStatus())
+                .message(fallback.getMessage())
+                .build());
     }
 }
-
@@ -0,0 +1,60 @@
+package com.khiem.gateway.controller;
+
+import com.khiem.gateway.configuration.AuthenticationFilter;
+import com.khiem.gateway.dto.ApiResponse;
+import com.khiem.gateway.dto.response.HomeResponse;
+import com.khiem.gateway.service.HomeService;
+import com.khiem.gateway.service.IdentityContextSigner;
+import com.khiem.gateway.service.IdentityService;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+// Controllers are not routes, so global filters don't run here and the token is checked in place
+@RestController
+@RequestMapping("/api/v1")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class HomeController {
+    IdentityService identityService;
+    HomeService homeService;
+    IdentityContextSigner identityContextSigner;
+
+    // Feed, own profile and conversations in one response, parts that didn't answer are listed in unavailable
+    @GetMapping("/home")
+    Mono<ResponseEntity<ApiResponse<HomeResponse>>> home(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestParam(value = "page", required = false, defaultValue = "1") int page,
+            @RequestParam(value = "size", required = false, defaultValue = "10") int size
+    ) {
+        String token = AuthenticationFilter.bearerToken(authorization);
+        if (token == null)
+            return Mono.just(unauthenticated());
+
+        return identityService.authenticate(token)
+                .flatMap(verifiedToken -> homeService.home(authorization,
+                        identityContextSigner.sign(verifiedToken), page, size))
+                .map(home -> ResponseEntity.ok(ApiResponse.<HomeResponse>builder()
+                        .message(home.getUnavailable() == null ? null : "Some parts of the home screen are unavailable")
+                        .result(home)
+                        .build()))
+                .defaultIfEmpty(unauthenticated())
+                .onErrorResume(throwable -> Mono.just(unauthenticated()));
+    }
+
+    private static ResponseEntity<ApiResponse<HomeResponse>> unauthenticated() {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ApiResponse.<HomeResponse>builder()
+                .code(1401)
+                .message("Unauthenticated")
+                .build());
+    }
+}
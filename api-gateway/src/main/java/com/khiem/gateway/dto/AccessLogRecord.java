@@ -0,0 +1,39 @@
+package com.khiem.gateway.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AccessLogRecord {
+    Instant timestamp;
+    String method;
+    String path;
+    String routeId;
+    Integer status;
+    double durationMs;
+
+    // Until the upstream response headers arrived, null when the request never reached a downstream
+    Double upstreamMs;
+
+    Long bytesIn;
+    long bytesOut;
+    String clientIp;
+
+    // First 16 hex characters of the token's SHA-256, never the token itself
+    String tokenFingerprint;
+
+    // Why this request was logged: error, slow or sampled
+    String reason;
+}
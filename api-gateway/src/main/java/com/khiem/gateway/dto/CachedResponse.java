@@ -0,0 +1,36 @@
+package com.khiem.gateway.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+
+import java.net.URI;
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class CachedResponse {
+    HttpStatusCode status;
+    HttpHeaders headers;
+    byte[] body;
+
+    // ETag sent to clients, the upstream one when it sent one
+    String etag;
+    boolean upstreamEtag;
+
+    Instant storedAt;
+    Instant freshUntil;
+    Instant staleUntil;
+
+    // Where and with which headers to fetch the entry again when revalidating, instances:// before load balancing
+    URI upstreamUri;
+    HttpHeaders requestHeaders;
+}
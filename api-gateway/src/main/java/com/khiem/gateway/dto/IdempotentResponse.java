@@ -0,0 +1,30 @@
+package com.khiem.gateway.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class IdempotentResponse {
+    // Method, path, query and body digest of the request that first used the key, only the request line
+    // while it is in flight
+    String fingerprint;
+
+    // 0 while the first request is still in flight
+    int status;
+    String contentType;
+    byte[] body;
+
+    @JsonIgnore
+    public boolean isInFlight() {
+        return status == 0;
+    }
+}
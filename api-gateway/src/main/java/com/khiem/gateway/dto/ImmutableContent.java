@@ -0,0 +1,20 @@
+package com.khiem.gateway.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ImmutableContent {
+    String contentType;
+    String contentDisposition;
+    String etag;
+    byte[] body;
+}
@@ -0,0 +1,28 @@
+package com.khiem.gateway.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class HomeResponse {
+    // The result of each downstream call, null when that part failed or timed out
+    JsonNode feed;
+    JsonNode profile;
+    JsonNode conversations;
+
+    // Names of the parts that are missing from this response
+    List<String> unavailable;
+}
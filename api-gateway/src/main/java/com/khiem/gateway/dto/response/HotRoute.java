@@ -0,0 +1,24 @@
+package com.khiem.gateway.dto.response;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HotRoute {
+    String routeId;
+
+    // Over the sliding window
+    long requests;
+    long errors;
+    double requestsPerSecond;
+    double p50Ms;
+    double p99Ms;
+}
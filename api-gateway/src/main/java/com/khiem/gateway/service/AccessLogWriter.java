@@ -0,0 +1,95 @@
+package com.khiem.gateway.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.khiem.gateway.dto.AccessLogRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes access log records as one JSON line each to the {@code access-log} logger, from a single
+ * background thread. Request threads only put records into a {@link RingBuffer}, so they never wait on
+ * log I/O; when the writer can't keep up, records are dropped and counted instead.
+ */
+@Slf4j
+@Service
+public class AccessLogWriter {
+    private static final Logger ACCESS_LOG = LoggerFactory.getLogger("access-log");
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final RingBuffer<AccessLogRecord> buffer;
+    private final ObjectMapper objectMapper;
+    private final Counter written;
+    private final Counter dropped;
+    private volatile boolean running;
+    private Thread writer;
+
+    public AccessLogWriter(ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.access-log.buffer-size:8192}") int bufferSize) {
+        this.buffer = new RingBuffer<>(bufferSize);
+        this.objectMapper = objectMapper;
+        this.written = Counter.builder("gateway.access-log.records")
+                .description("Access log records written")
+                .tag("result", "written")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("gateway.access-log.records")
+                .description("Access log records dropped because the buffer was full")
+                .tag("result", "dropped")
+                .register(meterRegistry);
+        Gauge.builder("gateway.access-log.backlog", buffer, RingBuffer::size)
+                .description("Access log records waiting to be written")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        writer = Thread.ofPlatform().name("access-log-writer").daemon().start(this::drain);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(2));
+    }
+
+    public void submit(AccessLogRecord record) {
+        if (!buffer.offer(record))
+            dropped.increment();
+    }
+
+    private void drain() {
+        while (true) {
+            AccessLogRecord record = buffer.poll();
+            if (record != null) {
+                write(record);
+            } else if (running) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else if (buffer.size() == 0) {
+                return;
+            }
+        }
+    }
+
+    private void write(AccessLogRecord record) {
+        try {
+            ACCESS_LOG.info(objectMapper.writeValueAsString(record));
+            written.increment();
+        } catch (JsonProcessingException e) {
+            log.warn("Could not write access log record: {}", e.getMessage());
+        }
+    }
+}
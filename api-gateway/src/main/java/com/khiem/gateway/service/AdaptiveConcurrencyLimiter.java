@@ -0,0 +1,79 @@
+package com.khiem.gateway.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit for one downstream that follows its latency, using the gradient approach: the limit
+ * is scaled by how far recent RTT has drifted above the long-term RTT, plus a small headroom of
+ * {@code sqrt(limit)} so it keeps probing upwards while latency is steady.
+ *
+ * <p>Samples that failed (errors, 5xx) count as RTT far above tolerance and shrink the limit. The limit
+ * only grows while at least half of it is in use, so an idle route doesn't drift to the maximum.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final double longRttFactor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+    private double longRttNanos;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double tolerance, double smoothing, int longWindow) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.longRttFactor = 2.0 / (longWindow + 1);
+    }
+
+    // Returns false without changing anything when the route is already at its limit
+    public boolean tryAcquire() {
+        int current = inFlight.incrementAndGet();
+        if (current > (int) limit) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    // Called once per admitted request that got an answer, after release()
+    public synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        if (longRttNanos == 0)
+            longRttNanos = rttNanos;
+
+        double gradient;
+        if (dropped) {
+            gradient = 0.5;
+        } else {
+            longRttNanos += (rttNanos - longRttNanos) * longRttFactor;
+            // Let the baseline follow a downstream that got permanently faster
+            if (longRttNanos / rttNanos > 2)
+                longRttNanos *= 0.95;
+            gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+        }
+
+        if (!dropped && gradient == 1.0 && inFlightAtStart < limit / 2)
+            return;
+
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,91 @@
+package com.khiem.gateway.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hash ring over the instances of one service, each placed at {@code virtualNodes} points so keys spread
+ * evenly and adding or removing an instance only moves the keys next to its points, about 1/n of them.
+ *
+ * <p>Lookups use consistent hashing with bounded load: walking the ring from the key's point, an instance
+ * is skipped while it already has more than {@code loadFactor} times the average requests in flight, and
+ * ejected instances are skipped too. A key therefore stays on its instance until that instance is
+ * overloaded or out of rotation, and then moves to the next one on the ring, which is the same for
+ * every request with that key.
+ */
+public class ConsistentHashRing {
+    private final long[] points;
+    private final UpstreamInstance[] owners;
+    private final List<UpstreamInstance> instances;
+
+    public ConsistentHashRing(List<UpstreamInstance> instances, int virtualNodes) {
+        this.instances = List.copyOf(instances);
+        int size = instances.size() * virtualNodes;
+        long[][] entries = new long[size][];
+        for (int i = 0; i < instances.size(); i++) {
+            String uri = instances.get(i).getUri().toString();
+            for (int node = 0; node < virtualNodes; node++)
+                entries[i * virtualNodes + node] = new long[]{hash(uri + '#' + node), i};
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+
+        this.points = new long[size];
+        this.owners = new UpstreamInstance[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = entries[i][0];
+            owners[i] = instances.get((int) entries[i][1]);
+        }
+    }
+
+    // The instance the key is routed to, null when the ring is empty; spilled tells whether it isn't the key's owner
+    public Choice choose(String key, double loadFactor, long now) {
+        if (points.length == 0)
+            return null;
+
+        long totalInFlight = 0;
+        for (UpstreamInstance instance : instances)
+            totalInFlight += instance.getInFlight();
+        long capacity = (long) Math.ceil(loadFactor * (totalInFlight + 1) / instances.size());
+
+        int start = Arrays.binarySearch(points, hash(key));
+        if (start < 0)
+            start = -start - 1;
+
+        UpstreamInstance owner = null;
+        UpstreamInstance firstHealthy = null;
+        for (int i = 0; i < points.length; i++) {
+            UpstreamInstance candidate = owners[(start + i) % points.length];
+            if (owner == null)
+                owner = candidate;
+            if (candidate.isEjected(now))
+                continue;
+            if (firstHealthy == null)
+                firstHealthy = candidate;
+            if (candidate.getInFlight() + 1 <= capacity)
+                return new Choice(candidate, candidate != owner);
+        }
+
+        // Every instance is ejected or at capacity, which bounded load rules out unless all are ejected
+        UpstreamInstance fallback = firstHealthy != null ? firstHealthy : owner;
+        return new Choice(fallback, fallback != owner);
+    }
+
+    public record Choice(UpstreamInstance instance, boolean spilled) {
+    }
+
+    // FNV-1a over the UTF-8 bytes, finished with MurmurHash3's mixer so nearby keys land far apart
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,53 @@
+package com.khiem.gateway.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gateway-wide allowance for hedged attempts, shared by every route using the Hedge filter.
+ *
+ * <p>Each hedgeable request earns {@code ratio} of a token and each hedge spends a whole one, so hedges
+ * stay below that fraction of traffic. When a downstream slows down for everyone the budget drains
+ * quickly and hedging stops instead of doubling the load on it.
+ */
+@Component
+public class HedgeBudget {
+    private static final long TOKEN = 1000;
+
+    private final AtomicLong milliTokens = new AtomicLong();
+    private final long deposit;
+    private final long capacity;
+
+    public HedgeBudget(MeterRegistry meterRegistry,
+                       @Value("${app.hedging.budget.ratio:0.1}") double ratio,
+                       @Value("${app.hedging.budget.max-tokens:100}") int maxTokens) {
+        this.deposit = Math.round(ratio * TOKEN);
+        this.capacity = maxTokens * TOKEN;
+
+        Gauge.builder("gateway.hedge.budget.tokens", this, HedgeBudget::getTokens)
+                .description("Hedged attempts the gateway may currently send")
+                .register(meterRegistry);
+    }
+
+    public void deposit() {
+        milliTokens.accumulateAndGet(deposit, (current, amount) -> Math.min(capacity, current + amount));
+    }
+
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = milliTokens.get();
+            if (current < TOKEN)
+                return false;
+            if (milliTokens.compareAndSet(current, current - TOKEN))
+                return true;
+        }
+    }
+
+    public double getTokens() {
+        return (double) milliTokens.get() / TOKEN;
+    }
+}
@@ -0,0 +1,140 @@
+package com.khiem.gateway.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.khiem.gateway.dto.response.HomeResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Builds the home screen from post-service, profile-service and chat-service in one round trip for the
+ * client. The three calls run in parallel with the caller's token and identity context, each with its own
+ * timeout, and a part that fails or times out is left out and named in {@code unavailable} instead of
+ * failing the whole response.
+ */
+@Slf4j
+@Service
+public class HomeService {
+    public static final String FEED = "feed";
+    public static final String PROFILE = "profile";
+    public static final String CONVERSATIONS = "conversations";
+
+    private final WebClient webClient;
+    private final UpstreamLoadBalancer loadBalancer;
+    private final MeterRegistry meterRegistry;
+    private final Duration feedTimeout;
+    private final Duration profileTimeout;
+    private final Duration conversationsTimeout;
+
+    public HomeService(WebClient.Builder webClientBuilder,
+                       UpstreamLoadBalancer loadBalancer,
+                       MeterRegistry meterRegistry,
+                       @Value("${app.home.timeout.feed:1500ms}") Duration feedTimeout,
+                       @Value("${app.home.timeout.profile:800ms}") Duration profileTimeout,
+                       @Value("${app.home.timeout.conversations:800ms}") Duration conversationsTimeout) {
+        this.webClient = webClientBuilder.build();
+        this.loadBalancer = loadBalancer;
+        this.meterRegistry = meterRegistry;
+        this.feedTimeout = feedTimeout;
+        this.profileTimeout = profileTimeout;
+        this.conversationsTimeout = conversationsTimeout;
+    }
+
+    public Mono<HomeResponse> home(String authorization, String identityContext, int page, int size) {
+        return Mono.zip(
+                        part(FEED, "post-service", "/post/?page=" + page + "&size=" + size, authorization,
+                                identityContext, feedTimeout),
+                        part(PROFILE, "profile-service", "/profile/users/my-profile", authorization, identityContext,
+                                profileTimeout),
+                        part(CONVERSATIONS, "chat-service", "/chat/conversations/my-conversations", authorization,
+                                identityContext, conversationsTimeout))
+                .map(parts -> {
+                    List<String> unavailable = new ArrayList<>();
+                    for (Part part : List.of(parts.getT1(), parts.getT2(), parts.getT3())) {
+                        if (part.result() == null)
+                            unavailable.add(part.name());
+                    }
+
+                    return HomeResponse.builder()
+                            .feed(parts.getT1().result())
+                            .profile(parts.getT2().result())
+                            .conversations(parts.getT3().result())
+                            .unavailable(unavailable.isEmpty() ? null : unavailable)
+                            .build();
+                });
+    }
+
+    // Always emits a Part, its result is null when the call didn't succeed in time
+    private Mono<Part> part(String name, String service, String pathAndQuery, String authorization,
+                            String identityContext, Duration timeout) {
+        return Mono.defer(() -> {
+                    UpstreamInstance instance = loadBalancer.choose(service);
+                    if (instance == null)
+                        return Mono.error(new IllegalStateException("No instances configured for " + service));
+
+                    URI url = UpstreamLoadBalancer.resolve(URI.create("instances://" + service + pathAndQuery), instance);
+                    long start = System.nanoTime();
+                    // The instance is released once, by whichever of answer, error or cancel comes first
+                    AtomicBoolean released = new AtomicBoolean();
+                    Consumer<Boolean> complete = failed -> {
+                        if (released.compareAndSet(false, true))
+                            loadBalancer.complete(instance, System.nanoTime() - start, failed);
+                    };
+
+                    return webClient.get()
+                            .uri(url)
+                            .header(HttpHeaders.AUTHORIZATION, authorization)
+                            .header(IdentityContextSigner.HEADER, identityContext)
+                            .exchangeToMono(response -> {
+                                complete.accept(response.statusCode().is5xxServerError());
+                                if (!response.statusCode().is2xxSuccessful())
+                                    return response.releaseBody()
+                                            .then(Mono.error(new IllegalStateException(
+                                                    service + " answered " + response.statusCode())));
+                                return response.bodyToMono(JsonNode.class);
+                            })
+                            .timeout(timeout)
+                            // A timeout says the instance is slow, which its latency already reflects
+                            .doOnError(throwable -> complete.accept(!(throwable instanceof TimeoutException)))
+                            .doOnCancel(() -> {
+                                if (released.compareAndSet(false, true))
+                                    loadBalancer.cancel(instance);
+                            });
+                })
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException(service + " answered without a body")))
+                .map(body -> {
+                    count(name, "ok");
+                    return new Part(name, body.get("result"));
+                })
+                .onErrorResume(throwable -> {
+                    count(name, throwable instanceof TimeoutException ? "timeout" : "error");
+                    log.debug("Home part {} unavailable: {}", name, throwable.getMessage());
+                    return Mono.just(new Part(name, null));
+                });
+    }
+
+    private void count(String part, String result) {
+        Counter.builder("gateway.home.parts")
+                .description("Downstream calls made for the home endpoint")
+                .tag("part", part)
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private record Part(String name, JsonNode result) {
+    }
+}
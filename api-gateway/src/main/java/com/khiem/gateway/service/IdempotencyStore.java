@@ -0,0 +1,63 @@
+package com.khiem.gateway.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.khiem.gateway.dto.IdempotentResponse;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Responses of requests sent with an Idempotency-Key, kept in Redis so every gateway node replays the
+ * same answer. A key is first claimed with an in-flight marker that expires on its own, so a node that
+ * dies mid-request doesn't block the key for longer than the lock timeout.
+ */
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class IdempotencyStore {
+    static final String KEY_PREFIX = "idempotency:";
+
+    ReactiveStringRedisTemplate redisTemplate;
+    ObjectMapper objectMapper;
+
+    // True when the caller is the first to use the key and should forward the request
+    public Mono<Boolean> claim(String key, String fingerprint, Duration lockTimeout) {
+        IdempotentResponse inFlight = IdempotentResponse.builder().fingerprint(fingerprint).build();
+        return redisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + key, write(inFlight), lockTimeout);
+    }
+
+    public Mono<Void> complete(String key, IdempotentResponse response, Duration ttl) {
+        return redisTemplate.opsForValue().set(KEY_PREFIX + key, write(response), ttl).then();
+    }
+
+    // Frees the key after a failed first attempt so the client can try again
+    public Mono<Void> release(String key) {
+        return redisTemplate.delete(KEY_PREFIX + key).then();
+    }
+
+    public Mono<IdempotentResponse> find(String key) {
+        return redisTemplate.opsForValue().get(KEY_PREFIX + key).map(this::read);
+    }
+
+    private String write(IdempotentResponse response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private IdempotentResponse read(String value) {
+        try {
+            return objectMapper.readValue(value, IdempotentResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.dto.VerifiedToken;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Builds the {@value #HEADER} header forwarded to downstream services for authenticated requests, so
+ * they can trust the caller without decoding the JWT again.
+ *
+ * <p>The value is {@code base64url(subject \n expiry epoch seconds \n scope) . base64url(HMAC-SHA256)},
+ * keyed with {@code app.identity-context.secret} which the services share with the gateway.
+ */
+@Component
+public class IdentityContextSigner {
+    public static final String HEADER = "X-Identity-Context";
+    private static final String ALGORITHM = "HmacSHA256";
+    // Only when the token carries no exp, the header must still expire
+    private static final Duration DEFAULT_LIFETIME = Duration.ofMinutes(5);
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    public IdentityContextSigner(@Value("${app.identity-context.secret}") String secret) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    public String sign(VerifiedToken token) {
+        Instant expiresAt = token.getExpiresAt() != null ? token.getExpiresAt() : Instant.now().plus(DEFAULT_LIFETIME);
+        String payload = token.getSubject() + "\n" + expiresAt.getEpochSecond() + "\n"
+                + (token.getScope() != null ? token.getScope() : "");
+
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String encodedPayload = encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        byte[] signature = macs.get().doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII));
+        return encodedPayload + "." + encoder.encodeToString(signature);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
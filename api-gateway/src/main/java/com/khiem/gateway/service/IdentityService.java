@@ -1,25 +1,136 @@
 package com.khiem.gateway.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.khiem.gateway.dto.ApiResponse;
+import com.khiem.gateway.dto.VerifiedToken;
 import com.khiem.gateway.dto.request.IntrospectRequest;
 import com.khiem.gateway.dto.response.IntrospectResponse;
 import com.khiem.gateway.repository.IdentityClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Optional;
+
 @Service
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class IdentityService {
     IdentityClient identityClient;
+    JwtVerifier jwtVerifier;
+    RevokedTokenStore revokedTokenStore;
+    MeterRegistry meterRegistry;
+
+    @Value("${app.auth.local-verification:true}")
+    @NonFinal
+    boolean localVerification;
+
+    @Value("${app.auth.revocation-feed.enabled:true}")
+    @NonFinal
+    boolean revocationFeedEnabled;
+
+    @Value("${app.auth.introspection-cache.max-ttl:30}")
+    @NonFinal
+    long introspectionCacheMaxTtl; // in seconds
+
+    @Value("${app.auth.introspection-cache.max-entries:100000}")
+    @NonFinal
+    long introspectionCacheMaxEntries;
+
+    @Value("${app.auth.negative-cache.ttl:300}")
+    @NonFinal
+    long negativeCacheTtl; // in seconds
+
+    @Value("${app.auth.negative-cache.max-entries:100000}")
+    @NonFinal
+    long negativeCacheMaxEntries;
+
+    // token digest -> claims of a token identity-service reported as valid
+    @NonFinal
+    Cache<String, VerifiedToken> introspectionCache;
+
+    // token digest of a token identity-service reported as invalid, replays are rejected without asking again
+    @NonFinal
+    Cache<String, Boolean> rejectedTokens;
+
+    // Concurrent requests carrying the same uncached token share one call to identity-service
+    @NonFinal
+    SingleFlight<String, VerifiedToken> introspections;
+
+    @PostConstruct
+    void init() {
+        introspectionCache = Caffeine.newBuilder()
+                .maximumSize(introspectionCacheMaxEntries)
+                .expireAfter(new InstantExpiry<String, VerifiedToken>(
+                        VerifiedToken::getExpiresAt, Duration.ofSeconds(introspectionCacheMaxTtl)))
+                .recordStats()
+                .build();
+
+        rejectedTokens = Caffeine.newBuilder()
+                .maximumSize(negativeCacheMaxEntries)
+                .expireAfterWrite(Duration.ofSeconds(negativeCacheTtl))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, introspectionCache, "gateway.introspection");
+        CaffeineCacheMetrics.monitor(meterRegistry, rejectedTokens, "gateway.rejected-tokens");
+        introspections = new SingleFlight<>(meterRegistry, "introspection");
+    }
 
     public Mono<ApiResponse<IntrospectResponse>> introspect(String token){
         return identityClient.introspect(IntrospectRequest.builder()
                         .token(token)
                 .build());
     }
-}
 
+    // Emits the token's claims when it is valid, completes empty otherwise
+    public Mono<VerifiedToken> authenticate(String token) {
+        if (!localVerification)
+            return jwtVerifier.read(token)
+                    .map(claims -> cachedIntrospect(token, claims))
+                    .orElseGet(Mono::empty);
+
+        // Signature and expiry are checked locally, what is left is whether the token was revoked
+        Optional<VerifiedToken> verifiedToken = jwtVerifier.verify(token);
+        if (verifiedToken.isEmpty())
+            return Mono.empty();
+
+        // While the feed is not caught up, a revocation it has not delivered yet would go unnoticed
+        String jwtId = verifiedToken.get().getJwtId();
+        if (revocationFeedEnabled && jwtId != null && revokedTokenStore.isCurrent())
+            return revokedTokenStore.isRevoked(jwtId) ? Mono.empty() : Mono.just(verifiedToken.get());
+
+        return cachedIntrospect(token, verifiedToken.get());
+    }
+
+    private Mono<VerifiedToken> cachedIntrospect(String token, VerifiedToken claims) {
+        String key = TokenDigest.of(token);
+        VerifiedToken cached = introspectionCache.getIfPresent(key);
+        if (cached != null)
+            return Mono.just(cached);
+        if (rejectedTokens.getIfPresent(key) != null)
+            return Mono.empty();
+
+        // Only a definite answer is remembered, failed calls to identity-service are not
+        return introspections.execute(key, () -> introspect(token)
+                .doOnNext(response -> {
+                    if (!response.getResult().isValid())
+                        rejectedTokens.put(key, Boolean.TRUE);
+                })
+                .filter(response -> response.getResult().isValid())
+                .map(response -> claims)
+                .doOnNext(verified -> {
+                    if (claims.getExpiresAt() != null)
+                        introspectionCache.put(key, claims);
+                }));
+    }
+}
@@ -0,0 +1,73 @@
+package com.khiem.gateway.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.khiem.gateway.dto.ImmutableContent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Byte-bounded store of responses whose content never changes for a given URL, such as uploaded files
+ * named by a random UUID. Entries don't expire, they are only evicted when the cache needs room, so the
+ * files requested most often stay at the gateway.
+ */
+@Service
+public class ImmutableContentCache {
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final Cache<String, ImmutableContent> cache;
+    private final long maxEntryBytes;
+
+    public ImmutableContentCache(MeterRegistry meterRegistry,
+                                 @Value("${app.immutable-cache.max-bytes:134217728}") long maxBytes,
+                                 @Value("${app.immutable-cache.max-entry-bytes:5242880}") long maxEntryBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, ImmutableContent content) -> key.length() + content.getBody().length + ENTRY_OVERHEAD)
+                .recordStats()
+                .build();
+        this.maxEntryBytes = maxEntryBytes;
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.immutable");
+    }
+
+    public ImmutableContent get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    // Cheap check made before buffering a response body. A body of unknown length, e.g. a chunked one, could
+    // be of any size, so it is streamed through rather than joined in memory to find out
+    public boolean isStorable(HttpStatusCode status, HttpHeaders headers) {
+        if (status == null || status.value() != HttpStatus.OK.value()
+                || headers.containsKey(HttpHeaders.SET_COOKIE) || headers.containsKey(HttpHeaders.CONTENT_ENCODING))
+            return false;
+
+        Map<String, String> directives = ResponseCache.cacheControl(headers);
+        if (directives.containsKey("no-store") || directives.containsKey("private"))
+            return false;
+
+        long contentLength = headers.getContentLength();
+        return contentLength >= 0 && contentLength <= maxEntryBytes;
+    }
+
+    public ImmutableContent store(String key, HttpHeaders headers, byte[] body) {
+        if (body.length > maxEntryBytes)
+            return null;
+
+        ImmutableContent content = ImmutableContent.builder()
+                .contentType(headers.getFirst(HttpHeaders.CONTENT_TYPE))
+                .contentDisposition(headers.getFirst(HttpHeaders.CONTENT_DISPOSITION))
+                .etag(ResponseCache.etagOf(body))
+                .body(body)
+                .build();
+        cache.put(key, content);
+        return content;
+    }
+}
@@ -0,0 +1,45 @@
+package com.khiem.gateway.service;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Function;
+
+// Expires a cache entry at an instant derived from its value (e.g. a token's exp), optionally capped by a max TTL
+public class InstantExpiry<K, V> implements Expiry<K, V> {
+    private final Function<V, Instant> expiryOf;
+    private final long maxTtlNanos;
+
+    public InstantExpiry(Function<V, Instant> expiryOf) {
+        this(expiryOf, null);
+    }
+
+    public InstantExpiry(Function<V, Instant> expiryOf, Duration maxTtl) {
+        this.expiryOf = expiryOf;
+        this.maxTtlNanos = maxTtl == null ? Long.MAX_VALUE : maxTtl.toNanos();
+    }
+
+    @Override
+    public long expireAfterCreate(K key, V value, long currentTime) {
+        return timeToLive(expiryOf.apply(value));
+    }
+
+    @Override
+    public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+        return timeToLive(expiryOf.apply(value));
+    }
+
+    @Override
+    public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    private long timeToLive(Instant expiresAt) {
+        Duration untilExpiry = Duration.between(Instant.now(), expiresAt);
+        if (untilExpiry.isNegative())
+            return 0;
+
+        return Math.min(untilExpiry.toNanos(), maxTtlNanos);
+    }
+}
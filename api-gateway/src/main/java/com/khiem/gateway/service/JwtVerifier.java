@@ -0,0 +1,66 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.dto.VerifiedToken;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Optional;
+
+// Verifies the HS512 signature and expiry of a token in-process, without calling identity-service
+@Slf4j
+@Component
+public class JwtVerifier {
+    private final JWSVerifier verifier;
+
+    public JwtVerifier(@Value("${jwt.signerKey}") String signerKey) throws JOSEException {
+        this.verifier = new MACVerifier(signerKey.getBytes());
+    }
+
+    public Optional<VerifiedToken> verify(String token) {
+        try {
+            SignedJWT signedJWT = SignedJWT.parse(token);
+
+            if (!JWSAlgorithm.HS512.equals(signedJWT.getHeader().getAlgorithm())
+                    || !signedJWT.verify(verifier))
+                return Optional.empty();
+
+            JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+            Date expiryTime = claims.getExpirationTime();
+            if (expiryTime == null || expiryTime.before(new Date()))
+                return Optional.empty();
+
+            return Optional.of(toVerifiedToken(claims));
+        } catch (ParseException | JOSEException e) {
+            log.debug("Local token verification failed: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // Reads the claims without checking the signature, only for tokens identity-service vouches for
+    public Optional<VerifiedToken> read(String token) {
+        try {
+            return Optional.of(toVerifiedToken(SignedJWT.parse(token).getJWTClaimsSet()));
+        } catch (ParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    private VerifiedToken toVerifiedToken(JWTClaimsSet claims) throws ParseException {
+        Date expiryTime = claims.getExpirationTime();
+        return VerifiedToken.builder()
+                .jwtId(claims.getJWTID())
+                .subject(claims.getSubject())
+                .scope(claims.getStringClaim("scope"))
+                .expiresAt(expiryTime == null ? null : expiryTime.toInstant())
+                .build();
+    }
+}
@@ -0,0 +1,66 @@
+package com.khiem.gateway.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size latency histogram with logarithmic buckets, in the spirit of DDSketch: any quantile is
+ * reported within 2% of the true value, memory doesn't grow with the number of samples, and sketches
+ * recorded separately can be merged. Latencies outside 1µs..100s land in the first or last bucket.
+ */
+public class LatencySketch {
+    private static final double RELATIVE_ACCURACY = 0.02;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final long MIN_NANOS = 1_000;
+    private static final long MAX_NANOS = 100_000_000_000L;
+    private static final int BUCKETS = index(MAX_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+
+    public void record(long nanos) {
+        counts.incrementAndGet(index(nanos));
+        count.incrementAndGet();
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+    }
+
+    // Quantile of all samples in the given sketches together, in nanoseconds, 0 when they are empty
+    public static double quantile(List<LatencySketch> sketches, double quantile) {
+        long total = 0;
+        for (LatencySketch sketch : sketches)
+            total += sketch.count();
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            for (LatencySketch sketch : sketches)
+                seen += sketch.counts.get(i);
+            if (seen >= rank)
+                return value(i);
+        }
+        return value(BUCKETS - 1);
+    }
+
+    private static int index(long nanos) {
+        long clamped = Math.min(MAX_NANOS, Math.max(MIN_NANOS, nanos));
+        return (int) Math.ceil(Math.log((double) clamped / MIN_NANOS) / LOG_GAMMA);
+    }
+
+    // Midpoint of the bucket's range, which keeps the relative error within RELATIVE_ACCURACY
+    private static double value(int index) {
+        return MIN_NANOS * 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+}
@@ -0,0 +1,203 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.configuration.AdmissionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gateway-wide admission of requests by priority class.
+ *
+ * <p>Below {@code app.admission.max-in-flight} every request is admitted at once. Above it requests
+ * wait in one queue per class and each freed slot goes to the class chosen by weighted fair queuing:
+ * every queued request gets a virtual finish time of {@code 1 / weight} after the previous one of its
+ * class, and the earliest finish time is admitted next. Under sustained overload critical, normal and
+ * bulk requests are therefore admitted in proportion to their weights, and bulk, with the smallest
+ * queue and shortest timeout, is the first to be rejected.
+ */
+@Service
+public class PriorityAdmission {
+    public enum Priority { CRITICAL, NORMAL, BULK }
+
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Map<Priority, ClassQueue> queues = new EnumMap<>(Priority.class);
+    private double virtualTime;
+
+    public PriorityAdmission(AdmissionProperties properties, MeterRegistry meterRegistry) {
+        this.maxInFlight = properties.getMaxInFlight();
+        for (Priority priority : Priority.values()) {
+            AdmissionProperties.PriorityClass priorityClass = properties.getClasses()
+                    .getOrDefault(priority, new AdmissionProperties.PriorityClass());
+            queues.put(priority, new ClassQueue(priority, priorityClass, meterRegistry));
+        }
+
+        Gauge.builder("gateway.admission.in-flight", inFlight, AtomicInteger::get)
+                .description("Requests admitted and not yet answered")
+                .register(meterRegistry);
+    }
+
+    // Emits true once the request may proceed, the caller must then call release(), or false when it was shed
+    public Mono<Boolean> admit(Priority priority) {
+        ClassQueue queue = queues.get(priority);
+        return Mono.defer(() -> {
+            if (queued.get() == 0 && tryTakeSlot()) {
+                queue.admitted.increment();
+                return Mono.just(true);
+            }
+            return Mono.create(sink -> enqueue(queue, sink));
+        });
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+        if (queued.get() > 0)
+            dispatch();
+    }
+
+    private boolean tryTakeSlot() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxInFlight)
+                return false;
+            if (inFlight.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+
+    private void enqueue(ClassQueue queue, MonoSink<Boolean> sink) {
+        Waiter waiter = new Waiter(sink);
+        synchronized (this) {
+            if (queue.waiters.size() >= queue.capacity) {
+                queue.rejected.increment();
+                sink.success(false);
+                return;
+            }
+
+            double start = Math.max(virtualTime, queue.lastFinish);
+            waiter.finish = start + 1.0 / queue.weight;
+            queue.lastFinish = waiter.finish;
+            queue.waiters.addLast(waiter);
+            queued.incrementAndGet();
+        }
+
+        sink.onCancel(() -> {
+            // Admitted, but the subscriber went away before it got the slot
+            if (!giveUp(queue, waiter))
+                release();
+        });
+        Schedulers.parallel().schedule(() -> {
+            if (giveUp(queue, waiter)) {
+                queue.timedOut.increment();
+                sink.success(false);
+            }
+        }, queue.timeout.toNanos(), TimeUnit.NANOSECONDS);
+
+        // Covers a release that happened while this request was being queued
+        dispatch();
+    }
+
+    // Takes a waiter out of its queue unless it was admitted first
+    private boolean giveUp(ClassQueue queue, Waiter waiter) {
+        if (!waiter.state.compareAndSet(false, true))
+            return false;
+        synchronized (this) {
+            if (queue.waiters.remove(waiter))
+                queued.decrementAndGet();
+        }
+        return true;
+    }
+
+    // Hands free slots to waiters by earliest virtual finish time, they are resumed outside the lock
+    private void dispatch() {
+        List<Waiter> admitted = new ArrayList<>();
+        synchronized (this) {
+            while (queued.get() > 0) {
+                ClassQueue next = null;
+                for (ClassQueue queue : queues.values()) {
+                    Waiter head = queue.waiters.peekFirst();
+                    if (head != null && (next == null || head.finish < next.waiters.peekFirst().finish))
+                        next = queue;
+                }
+                if (next == null || !tryTakeSlot())
+                    break;
+
+                Waiter waiter = next.waiters.pollFirst();
+                queued.decrementAndGet();
+                if (!waiter.state.compareAndSet(false, true)) {
+                    inFlight.decrementAndGet();
+                    continue;
+                }
+
+                virtualTime = waiter.finish;
+                next.queuedAdmitted.increment();
+                admitted.add(waiter);
+            }
+        }
+
+        for (Waiter waiter : admitted)
+            waiter.sink.success(true);
+    }
+
+    private static final class Waiter {
+        private final MonoSink<Boolean> sink;
+        // Set once by whichever comes first, admission or giving up
+        private final AtomicBoolean state = new AtomicBoolean();
+        private double finish;
+
+        private Waiter(MonoSink<Boolean> sink) {
+            this.sink = sink;
+        }
+    }
+
+    private static final class ClassQueue {
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        private final int weight;
+        private final int capacity;
+        private final Duration timeout;
+        private double lastFinish;
+
+        private final Counter admitted;
+        private final Counter queuedAdmitted;
+        private final Counter rejected;
+        private final Counter timedOut;
+
+        private ClassQueue(Priority priority, AdmissionProperties.PriorityClass priorityClass, MeterRegistry meterRegistry) {
+            this.weight = Math.max(1, priorityClass.getWeight());
+            this.capacity = priorityClass.getQueueCapacity();
+            this.timeout = priorityClass.getQueueTimeout();
+            this.admitted = requests(meterRegistry, priority, "admitted");
+            this.queuedAdmitted = requests(meterRegistry, priority, "queued");
+            this.rejected = requests(meterRegistry, priority, "rejected");
+            this.timedOut = requests(meterRegistry, priority, "timed-out");
+
+            Gauge.builder("gateway.admission.queue.depth", waiters, ArrayDeque::size)
+                    .description("Requests waiting for admission")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+
+        private static Counter requests(MeterRegistry meterRegistry, Priority priority, String result) {
+            return Counter.builder("gateway.admission.requests")
+                    .description("Admission decisions, queued counts requests admitted after waiting")
+                    .tag("priority", priority.name().toLowerCase())
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.khiem.gateway.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.khiem.gateway.configuration.UpstreamLoadBalancerFilter;
+import com.khiem.gateway.dto.CachedResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Byte-bounded store of upstream GET responses, shared by every route using the ResponseCache filter.
+ *
+ * <p>Entries are kept until the end of their stale-while-revalidate window. Serving a stale entry kicks off
+ * at most one background refetch per key, conditional on the upstream ETag when there is one. A successful
+ * mutation of a path evicts the entries it may have changed.
+ */
+@Slf4j
+@Service
+public class ResponseCache {
+    // Hop-by-hop, per-response or gateway-owned headers that must not be replayed from the cache
+    private static final Set<String> UNCACHED_HEADERS = Set.of(
+            "connection", "keep-alive", "transfer-encoding", "content-length", "date", "age", "set-cookie", "vary");
+    private static final int HEADER_WEIGHT = 64;
+
+    private final Cache<String, CachedResponse> cache;
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    private final WebClient webClient;
+    private final UpstreamLoadBalancer loadBalancer;
+    private final long maxEntryBytes;
+    private final Counter revalidations;
+    private final Counter revalidationFailures;
+    private final Counter invalidations;
+
+    public ResponseCache(WebClient.Builder webClientBuilder,
+                         UpstreamLoadBalancer loadBalancer,
+                         MeterRegistry meterRegistry,
+                         @Value("${app.response-cache.max-bytes:67108864}") long maxBytes,
+                         @Value("${app.response-cache.max-entry-bytes:1048576}") long maxEntryBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedResponse response) -> weight(key, response))
+                .expireAfter(new InstantExpiry<String, CachedResponse>(CachedResponse::getStaleUntil))
+                .recordStats()
+                .build();
+        this.webClient = webClientBuilder.build();
+        this.loadBalancer = loadBalancer;
+        this.maxEntryBytes = maxEntryBytes;
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.response");
+        this.revalidations = Counter.builder("gateway.response.cache.revalidations")
+                .description("Background refetches of stale entries")
+                .register(meterRegistry);
+        this.revalidationFailures = Counter.builder("gateway.response.cache.revalidation.failures")
+                .description("Background refetches that failed, the stale entry is kept")
+                .register(meterRegistry);
+        this.invalidations = Counter.builder("gateway.response.cache.invalidations")
+                .description("Entries evicted because a request changed the resource")
+                .register(meterRegistry);
+    }
+
+    public CachedResponse get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    // Cheap check made before buffering a response body
+    public boolean isStorable(HttpStatusCode status, HttpHeaders headers) {
+        if (status == null || status.value() != HttpStatus.OK.value() || headers.containsKey(HttpHeaders.SET_COOKIE))
+            return false;
+
+        Map<String, String> directives = cacheControl(headers);
+        if (directives.containsKey("no-store") || directives.containsKey("private") || directives.containsKey("no-cache"))
+            return false;
+
+        return headers.getContentLength() <= maxEntryBytes;
+    }
+
+    public CachedResponse store(String key, HttpStatusCode status, HttpHeaders responseHeaders, byte[] body,
+                                URI upstreamUri, HttpHeaders requestHeaders, Duration ttl, Duration staleWhileRevalidate) {
+        if (!isStorable(status, responseHeaders) || body.length > maxEntryBytes)
+            return null;
+
+        HttpHeaders headers = new HttpHeaders();
+        responseHeaders.forEach((name, values) -> {
+            String lowerCaseName = name.toLowerCase(Locale.ROOT);
+            if (!UNCACHED_HEADERS.contains(lowerCaseName) && !lowerCaseName.startsWith("access-control-"))
+                headers.put(name, new ArrayList<>(values));
+        });
+
+        String upstreamEtag = responseHeaders.getFirst(HttpHeaders.ETAG);
+        CachedResponse response = withFreshness(CachedResponse.builder()
+                .status(status)
+                .headers(headers)
+                .body(body)
+                .etag(upstreamEtag != null ? upstreamEtag : etagOf(body))
+                .upstreamEtag(upstreamEtag != null)
+                .upstreamUri(upstreamUri)
+                .requestHeaders(requestHeaders)
+                .build(), responseHeaders, ttl, staleWhileRevalidate);
+
+        cache.put(key, response);
+        return response;
+    }
+
+    // Evicts the path with any query, everything below it and its parent collection, e.g. a PUT of
+    // /books/1 evicts /books/1, /books/1/reviews and /books?page=2. Mutations are rare next to reads,
+    // so scanning the keys is cheaper than keeping an index by path
+    public void evict(String path) {
+        int lastSlash = path.lastIndexOf('/');
+        String parent = lastSlash > 0 ? path.substring(0, lastSlash) : null;
+
+        cache.asMap().keySet().removeIf(key -> {
+            boolean covered = covers(key, path, true) || (parent != null && covers(key, parent, false));
+            if (covered)
+                invalidations.increment();
+            return covered;
+        });
+    }
+
+    public void revalidate(String key, CachedResponse stale, Duration ttl, Duration staleWhileRevalidate) {
+        if (stale.getUpstreamUri() == null || !revalidating.add(key))
+            return;
+
+        // instances:// URIs are balanced like any other request, the instance that served the entry may be gone
+        URI uri = stale.getUpstreamUri();
+        UpstreamInstance instance = null;
+        if (UpstreamLoadBalancerFilter.SCHEME.equals(uri.getScheme())) {
+            instance = loadBalancer.choose(uri.getHost());
+            if (instance == null) {
+                revalidating.remove(key);
+                return;
+            }
+            uri = UpstreamLoadBalancer.resolve(uri, instance);
+        }
+
+        UpstreamInstance chosen = instance;
+        AtomicBoolean serverError = new AtomicBoolean();
+        long start = System.nanoTime();
+        revalidations.increment();
+        webClient.get()
+                .uri(uri)
+                .headers(headers -> {
+                    headers.addAll(stale.getRequestHeaders());
+                    if (stale.isUpstreamEtag())
+                        headers.set(HttpHeaders.IF_NONE_MATCH, stale.getEtag());
+                })
+                .exchangeToMono(response -> {
+                    serverError.set(response.statusCode().is5xxServerError());
+                    if (response.statusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+                        cache.put(key, withFreshness(stale.toBuilder().build(),
+                                response.headers().asHttpHeaders(), ttl, staleWhileRevalidate));
+                        return response.releaseBody();
+                    }
+
+                    return response.bodyToMono(byte[].class)
+                            .defaultIfEmpty(new byte[0])
+                            .doOnNext(body -> store(key, response.statusCode(), response.headers().asHttpHeaders(),
+                                    body, stale.getUpstreamUri(), stale.getRequestHeaders(), ttl, staleWhileRevalidate))
+                            .then();
+                })
+                .doFinally(signal -> {
+                    revalidating.remove(key);
+                    if (chosen == null)
+                        return;
+                    if (signal == SignalType.CANCEL)
+                        loadBalancer.cancel(chosen);
+                    else
+                        loadBalancer.complete(chosen, System.nanoTime() - start,
+                                signal == SignalType.ON_ERROR || serverError.get());
+                })
+                .subscribe(null, throwable -> {
+                    revalidationFailures.increment();
+                    log.debug("Revalidating {} failed: {}", key, throwable.getMessage());
+                });
+    }
+
+    public static Map<String, String> cacheControl(HttpHeaders headers) {
+        Map<String, String> directives = new HashMap<>();
+        for (String value : headers.getOrEmpty(HttpHeaders.CACHE_CONTROL)) {
+            for (String directive : value.split(",")) {
+                String trimmed = directive.trim().toLowerCase(Locale.ROOT);
+                if (trimmed.isEmpty())
+                    continue;
+
+                int separator = trimmed.indexOf('=');
+                if (separator < 0)
+                    directives.put(trimmed, "");
+                else
+                    directives.put(trimmed.substring(0, separator).trim(),
+                            trimmed.substring(separator + 1).trim().replace("\"", ""));
+            }
+        }
+        return directives;
+    }
+
+    // Upstream s-maxage/max-age and stale-while-revalidate win over the route defaults
+    private static CachedResponse withFreshness(CachedResponse response, HttpHeaders responseHeaders,
+                                                Duration ttl, Duration staleWhileRevalidate) {
+        Map<String, String> directives = cacheControl(responseHeaders);
+        Duration freshFor = seconds(directives.get("s-maxage"))
+                .orElse(seconds(directives.get("max-age")).orElse(ttl));
+        Duration staleFor = seconds(directives.get("stale-while-revalidate")).orElse(staleWhileRevalidate);
+
+        Instant now = Instant.now();
+        response.setStoredAt(now);
+        response.setFreshUntil(now.plus(freshFor));
+        response.setStaleUntil(now.plus(freshFor).plus(staleFor));
+        return response;
+    }
+
+    private static Optional<Duration> seconds(String value) {
+        if (value == null)
+            return Optional.empty();
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value))));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    // Keys are the raw path followed by nothing, '?' and the query, or '|' and the vary headers
+    private static boolean covers(String key, String path, boolean withSubPaths) {
+        if (!key.startsWith(path))
+            return false;
+        if (key.length() == path.length())
+            return true;
+
+        char next = key.charAt(path.length());
+        return next == '?' || next == '|' || (withSubPaths && next == '/');
+    }
+
+    static String etagOf(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int weight(String key, CachedResponse response) {
+        long weight = key.length() + (long) response.getBody().length + (long) response.getHeaders().size() * HEADER_WEIGHT;
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+}
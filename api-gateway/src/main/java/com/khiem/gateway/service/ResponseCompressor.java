@@ -0,0 +1,153 @@
+package com.khiem.gateway.service;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses response bodies for the Compression filter and keeps the compressed bytes of cacheable
+ * responses, so a response served many times from the response cache is compressed once per encoding.
+ *
+ * <p>Compression runs on the event loop, so it backs off with process CPU: above {@code fast-above} the
+ * fastest level is used, above {@code off-above} only already compressed bytes are served. CPU is sampled
+ * at most twice a second. Brotli is used when its native library loads on this platform, gzip otherwise.
+ */
+@Slf4j
+@Service
+public class ResponseCompressor {
+    public enum Encoding {
+        BR("br"), GZIP("gzip");
+
+        final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+
+        public String token() {
+            return token;
+        }
+    }
+
+    public enum Level { BEST, FAST, OFF }
+
+    private static final long CPU_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final Cache<String, byte[]> compressed;
+    private final boolean brotliAvailable;
+    private final double fastAbove;
+    private final double offAbove;
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    private volatile double cpuLoad;
+    private volatile long cpuSampledAt = System.nanoTime() - CPU_SAMPLE_NANOS;
+
+    public ResponseCompressor(MeterRegistry meterRegistry,
+                              @Value("${app.compression.cache.max-bytes:33554432}") long maxBytes,
+                              @Value("${app.compression.cpu.fast-above:0.7}") double fastAbove,
+                              @Value("${app.compression.cpu.off-above:0.9}") double offAbove) {
+        this.compressed = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, byte[] body) -> key.length() + body.length + ENTRY_OVERHEAD)
+                .recordStats()
+                .build();
+        this.fastAbove = fastAbove;
+        this.offAbove = offAbove;
+        this.brotliAvailable = loadBrotli();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, compressed, "gateway.compression");
+        Gauge.builder("gateway.compression.cpu", this, ResponseCompressor::cpuLoad)
+                .description("Process CPU load the compression level is chosen from")
+                .register(meterRegistry);
+    }
+
+    // Best encoding the client accepts, null when it accepts neither brotli nor gzip
+    public Encoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return null;
+
+        boolean br = false;
+        boolean gzip = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+            if (tokens.length > 1 && tokens[1].trim().replace(" ", "").matches("q=0(\\.0*)?"))
+                continue;
+
+            br |= coding.equals("br") || coding.equals("*");
+            gzip |= coding.equals("gzip") || coding.equals("*");
+        }
+
+        if (br && brotliAvailable)
+            return Encoding.BR;
+        return gzip ? Encoding.GZIP : null;
+    }
+
+    public Level level() {
+        double load = cpuLoad();
+        if (load > offAbove)
+            return Level.OFF;
+        return load > fastAbove ? Level.FAST : Level.BEST;
+    }
+
+    public byte[] cached(String key, Encoding encoding) {
+        return compressed.getIfPresent(encoding.token + ':' + key);
+    }
+
+    public void cache(String key, Encoding encoding, byte[] body) {
+        compressed.put(encoding.token + ':' + key, body);
+    }
+
+    public byte[] compress(byte[] body, Encoding encoding, Level level) {
+        try {
+            if (encoding == Encoding.BR)
+                return Encoder.compress(body, new Encoder.Parameters().setQuality(level == Level.BEST ? 5 : 1));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+            int deflateLevel = level == Level.BEST ? 6 : 1;
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out) {{ def.setLevel(deflateLevel); }}) {
+                gzip.write(body);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private double cpuLoad() {
+        long now = System.nanoTime();
+        if (now - cpuSampledAt > CPU_SAMPLE_NANOS) {
+            cpuSampledAt = now;
+            // Negative while the JVM has no reading yet
+            cpuLoad = Math.max(0, os.getProcessCpuLoad());
+        }
+        return cpuLoad;
+    }
+
+    private static boolean loadBrotli() {
+        try {
+            Brotli4jLoader.ensureAvailability();
+            return true;
+        } catch (Throwable e) {
+            log.info("Brotli is not available on this platform, compressing with gzip only: {}", e.getMessage());
+            return false;
+        }
+    }
+}
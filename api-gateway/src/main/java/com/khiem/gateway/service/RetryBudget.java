@@ -0,0 +1,75 @@
+package com.khiem.gateway.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Allowance for retries of one route: the retries sent over the last {@code window} may not exceed
+ * {@code ratio} of the requests that succeeded in it, plus {@code minRetriesPerSecond} so a quiet route
+ * can still retry the odd failure. When a downstream fails for everyone its successes stop, the budget
+ * runs dry and failures are answered at once instead of multiplying the load on it.
+ *
+ * <p>The window is split into {@code slots} slices that are cleared when the window moves past them.
+ * Concurrent retries may overshoot the budget by the number of threads racing for the last retry.
+ */
+public class RetryBudget {
+    private final Slot[] slots;
+    private final long slotMillis;
+    private final double ratio;
+    private final double minRetries;
+    private final LongSupplier clock;
+
+    public RetryBudget(double ratio, int minRetriesPerSecond, Duration window, int slots) {
+        this(ratio, minRetriesPerSecond, window, slots, System::currentTimeMillis);
+    }
+
+    RetryBudget(double ratio, int minRetriesPerSecond, Duration window, int slots, LongSupplier clock) {
+        this.slots = new Slot[slots];
+        for (int i = 0; i < slots; i++)
+            this.slots[i] = new Slot();
+        this.slotMillis = Math.max(1, window.toMillis() / slots);
+        this.ratio = ratio;
+        this.minRetries = minRetriesPerSecond * window.toMillis() / 1000.0;
+        this.clock = clock;
+    }
+
+    public void recordSuccess() {
+        slot(clock.getAsLong() / slotMillis).successes.incrementAndGet();
+    }
+
+    // Takes one retry from the budget, false when the window has none left
+    public boolean tryAcquire() {
+        long currentSlot = clock.getAsLong() / slotMillis;
+        long successes = 0;
+        long retries = 0;
+        for (Slot slot : slots) {
+            if (currentSlot - slot.number.get() < slots.length) {
+                successes += slot.successes.get();
+                retries += slot.retries.get();
+            }
+        }
+
+        if (retries + 1 > successes * ratio + minRetries)
+            return false;
+        slot(currentSlot).retries.incrementAndGet();
+        return true;
+    }
+
+    private Slot slot(long slotNumber) {
+        Slot slot = slots[(int) (slotNumber % slots.length)];
+        long current = slot.number.get();
+        // The first writer of a new slice clears what the slot held one window ago
+        if (current != slotNumber && slot.number.compareAndSet(current, slotNumber)) {
+            slot.successes.set(0);
+            slot.retries.set(0);
+        }
+        return slot;
+    }
+
+    private static final class Slot {
+        private final AtomicLong number = new AtomicLong(-1);
+        private final AtomicLong successes = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+    }
+}
@@ -0,0 +1,121 @@
+package com.khiem.gateway.service;
+
+import com.khiem.event.dto.TokenRevokedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RevokedTokenConsumer implements ConsumerSeekAware {
+    static final String LISTENER_ID = "revoked-tokens";
+
+    RevokedTokenStore revokedTokenStore;
+    MeterRegistry meterRegistry;
+
+    @Value("${app.auth.revocation-feed.replay-window:3600}")
+    @NonFinal
+    long replayWindow; // in seconds
+
+    // records left to read on the assigned partitions, -1 while unknown
+    AtomicLong lag = new AtomicLong(-1);
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("gateway.revocation-feed.lag", lag, AtomicLong::get)
+                .description("Revocation records not consumed yet, -1 while unknown")
+                .register(meterRegistry);
+    }
+
+    // Every gateway node needs every revocation, so each one joins with its own group id. Offsets are never
+    // committed: the revoked ids live in memory only, so every assignment replays the window in which a
+    // revoked token can still be unexpired, and a group left behind by a restart has nothing to keep
+    @KafkaListener(
+            id = LISTENER_ID,
+            topics = "${app.auth.revocation-feed.topic:token-revoked-event}",
+            groupId = "${app.auth.revocation-feed.group-id}",
+            properties = "enable.auto.commit=false",
+            autoStartup = "${app.auth.revocation-feed.enabled:true}")
+    public void consumeTokenRevokedEvent(TokenRevokedEvent event, Consumer<?, ?> consumer) {
+        if (event.getJwtId() == null || event.getExpiryTime() == null) {
+            log.warn("Ignoring incomplete token revocation event: {}", event);
+        } else {
+            revokedTokenStore.revoke(event.getJwtId(), event.getExpiryTime().toInstant());
+        }
+
+        // Records arriving prove the broker is reachable, the lag the consumer last fetched is enough here
+        long behind = 0;
+        for (TopicPartition partition : consumer.assignment()) {
+            OptionalLong partitionLag = consumer.currentLag(partition);
+            if (partitionLag.isEmpty())
+                return;
+            behind += partitionLag.getAsLong();
+        }
+        caughtUpTo(behind);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        lag.set(-1);
+        revokedTokenStore.markBehind();
+        callback.seekToTimestamp(assignments.keySet(),
+                System.currentTimeMillis() - Duration.ofSeconds(replayWindow).toMillis());
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        lag.set(-1);
+        revokedTokenStore.markBehind();
+    }
+
+    // Published on the consumer thread whenever a poll interval passes without records. An empty poll also
+    // happens when the broker is unreachable, so the end offsets are asked for explicitly
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        Consumer<?, ?> consumer = event.getConsumer();
+        Set<TopicPartition> assignment = consumer.assignment();
+        if (assignment.isEmpty())
+            return;
+
+        try {
+            long behind = 0;
+            for (Map.Entry<TopicPartition, Long> end : consumer.endOffsets(assignment, Duration.ofSeconds(1)).entrySet())
+                behind += Math.max(0, end.getValue() - consumer.position(end.getKey(), Duration.ofSeconds(1)));
+            caughtUpTo(behind);
+        } catch (KafkaException e) {
+            log.debug("Revocation feed could not reach the broker: {}", e.getMessage());
+        }
+    }
+
+    // Any unread record may be the revocation of the next token presented, so only an empty lag counts
+    private void caughtUpTo(long behind) {
+        lag.set(behind);
+        if (behind == 0)
+            revokedTokenStore.markCurrent();
+        else
+            revokedTokenStore.markBehind();
+    }
+}
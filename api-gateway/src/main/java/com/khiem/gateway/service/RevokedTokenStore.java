@@ -0,0 +1,69 @@
+package com.khiem.gateway.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Token ids revoked by identity-service, held until the token would have expired anyway.
+ *
+ * <p>Only tokens revoked within one token lifetime are ever present, so the set stays small without a
+ * size bound. Evicting by size would silently make revoked tokens valid again.
+ *
+ * <p>The set is only trusted while the feed keeps confirming it is caught up. Until the first
+ * confirmation after startup, while records are left unread, or once confirmations stop for
+ * {@code max-staleness}, callers have to ask identity-service instead.
+ */
+@Component
+public class RevokedTokenStore {
+    private final Cache<String, Instant> revoked;
+    private final long maxStalenessNanos;
+
+    // System.nanoTime() of the last time the feed was known to be caught up, 0 before the first time
+    private volatile long currentAt;
+
+    public RevokedTokenStore(MeterRegistry meterRegistry,
+                             @Value("${app.auth.revocation-feed.max-staleness:30}") long maxStaleness) {
+        this.revoked = Caffeine.newBuilder()
+                .expireAfter(new InstantExpiry<String, Instant>(expiresAt -> expiresAt))
+                .recordStats()
+                .build();
+        this.maxStalenessNanos = Duration.ofSeconds(maxStaleness).toNanos();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, revoked, "gateway.revoked-tokens");
+        Gauge.builder("gateway.revocation-feed.current", this, store -> store.isCurrent() ? 1 : 0)
+                .description("Whether revocations are checked against the feed rather than identity-service")
+                .register(meterRegistry);
+    }
+
+    public void revoke(String jwtId, Instant expiresAt) {
+        if (expiresAt.isAfter(Instant.now()))
+            revoked.put(jwtId, expiresAt);
+    }
+
+    public boolean isRevoked(String jwtId) {
+        return revoked.getIfPresent(jwtId) != null;
+    }
+
+    // Called by the feed whenever it has confirmed that nothing published is left unread
+    public void markCurrent() {
+        currentAt = System.nanoTime();
+    }
+
+    // Called by the feed when it knows of unread records or its partitions are being reassigned
+    public void markBehind() {
+        currentAt = 0;
+    }
+
+    public boolean isCurrent() {
+        long at = currentAt;
+        return at != 0 && System.nanoTime() - at <= maxStalenessNanos;
+    }
+}
@@ -0,0 +1,56 @@
+package com.khiem.gateway.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer. {@link #offer} never blocks: when the
+ * consumer falls behind by the whole capacity, new elements are refused instead of stalling the caller.
+ */
+public class RingBuffer<T> {
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Capacity is rounded up to a power of two
+    public RingBuffer(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    // Safe from any thread, returns false when the buffer is full
+    public boolean offer(T element) {
+        while (true) {
+            long claimed = tail.get();
+            if (claimed - head.get() > mask)
+                return false;
+            if (tail.compareAndSet(claimed, claimed + 1)) {
+                slots.lazySet((int) claimed & mask, element);
+                return true;
+            }
+        }
+    }
+
+    // Consumer thread only, returns null when nothing has been published yet
+    public T poll() {
+        long next = head.get();
+        int index = (int) next & mask;
+        T element = slots.get(index);
+        if (element == null)
+            return null;
+
+        slots.lazySet(index, null);
+        head.lazySet(next + 1);
+        return element;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,114 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.dto.response.HotRoute;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and throughput of every route over a sliding window, for finding the routes that currently
+ * cost the most. The window is split into {@code slots} slices, each a {@link LatencySketch} plus an
+ * error count, and a slice is cleared when the window moves past it, so memory per route is constant.
+ */
+@Service
+public class RouteStatistics {
+    private final Map<String, RouteWindow> routes = new ConcurrentHashMap<>();
+    private final long slotMillis;
+    private final int slots;
+
+    public RouteStatistics(@Value("${app.route-stats.window:60s}") Duration window,
+                           @Value("${app.route-stats.slots:6}") int slots) {
+        this.slots = slots;
+        this.slotMillis = Math.max(1, window.toMillis() / slots);
+    }
+
+    public void record(String routeId, long durationNanos, boolean error) {
+        routes.computeIfAbsent(routeId, id -> new RouteWindow(slots))
+                .slot(System.currentTimeMillis() / slotMillis)
+                .record(durationNanos, error);
+    }
+
+    public List<HotRoute> topByP99(int limit) {
+        return top(limit, Comparator.comparingDouble(HotRoute::getP99Ms));
+    }
+
+    public List<HotRoute> topByThroughput(int limit) {
+        return top(limit, Comparator.comparingLong(HotRoute::getRequests));
+    }
+
+    private List<HotRoute> top(int limit, Comparator<HotRoute> order) {
+        long currentSlot = System.currentTimeMillis() / slotMillis;
+        List<HotRoute> hotRoutes = new ArrayList<>();
+        routes.forEach((routeId, window) -> {
+            HotRoute hotRoute = window.summarize(routeId, currentSlot, slotMillis * slots);
+            if (hotRoute.getRequests() > 0)
+                hotRoutes.add(hotRoute);
+        });
+
+        return hotRoutes.stream()
+                .sorted(order.reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private static final class RouteWindow {
+        private final Slot[] slots;
+
+        private RouteWindow(int size) {
+            this.slots = new Slot[size];
+            for (int i = 0; i < size; i++)
+                slots[i] = new Slot();
+        }
+
+        Slot slot(long slotNumber) {
+            Slot slot = slots[(int) (slotNumber % slots.length)];
+            long current = slot.number.get();
+            // The first writer of a new slice clears what the slot held one window ago
+            if (current != slotNumber && slot.number.compareAndSet(current, slotNumber)) {
+                slot.sketch.reset();
+                slot.errors.set(0);
+            }
+            return slot;
+        }
+
+        HotRoute summarize(String routeId, long currentSlot, long windowMillis) {
+            List<LatencySketch> sketches = new ArrayList<>();
+            long errors = 0;
+            for (Slot slot : slots) {
+                if (currentSlot - slot.number.get() < slots.length) {
+                    sketches.add(slot.sketch);
+                    errors += slot.errors.get();
+                }
+            }
+
+            long requests = sketches.stream().mapToLong(LatencySketch::count).sum();
+            return HotRoute.builder()
+                    .routeId(routeId)
+                    .requests(requests)
+                    .errors(errors)
+                    .requestsPerSecond(requests * 1000.0 / windowMillis)
+                    .p50Ms(LatencySketch.quantile(sketches, 0.5) / 1_000_000)
+                    .p99Ms(LatencySketch.quantile(sketches, 0.99) / 1_000_000)
+                    .build();
+        }
+    }
+
+    private static final class Slot {
+        private final AtomicLong number = new AtomicLong(-1);
+        private final LatencySketch sketch = new LatencySketch();
+        private final AtomicLong errors = new AtomicLong();
+
+        void record(long durationNanos, boolean error) {
+            sketch.record(durationNanos);
+            if (error)
+                errors.incrementAndGet();
+        }
+    }
+}
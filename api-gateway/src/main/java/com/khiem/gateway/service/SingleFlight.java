@@ -0,0 +1,71 @@
+package com.khiem.gateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent callers asking for the same key share one in-flight {@link Mono}.
+ *
+ * <p>The shared call starts with the first subscriber and is only cancelled once every subscriber has
+ * cancelled, so one client going away does not fail the others. Errors reach every subscriber that
+ * joined the call and are not remembered: the next caller after completion starts a fresh call.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter calls;
+    private final Counter collapsed;
+
+    public SingleFlight(MeterRegistry meterRegistry, String name) {
+        this.calls = Counter.builder("gateway.singleflight.calls")
+                .description("Calls started on behalf of one or more callers")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.collapsed = Counter.builder("gateway.singleflight.collapsed")
+                .description("Callers that joined a call already in flight instead of starting their own")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("gateway.singleflight.in-flight", inFlight, ConcurrentMap::size)
+                .description("Keys with a call currently in flight")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.defer(() -> {
+            Mono<V> existing = inFlight.get(key);
+            if (existing != null) {
+                collapsed.increment();
+                return existing;
+            }
+
+            Mono<V> created = share(key, call);
+            existing = inFlight.putIfAbsent(key, created);
+            if (existing != null) {
+                collapsed.increment();
+                return existing;
+            }
+
+            calls.increment();
+            return created;
+        });
+    }
+
+    private Mono<V> share(K key, Supplier<Mono<V>> call) {
+        AtomicReference<Mono<V>> self = new AtomicReference<>();
+        Mono<V> shared = Mono.defer(call)
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .flux()
+                .publish()
+                .refCount()
+                .next();
+        self.set(shared);
+        return shared;
+    }
+}
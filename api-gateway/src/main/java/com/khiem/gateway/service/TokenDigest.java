@@ -0,0 +1,21 @@
+package com.khiem.gateway.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// SHA-256 of a bearer token, used wherever a token has to be a map key or show up in logs
+public final class TokenDigest {
+    private TokenDigest() {
+    }
+
+    public static String of(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
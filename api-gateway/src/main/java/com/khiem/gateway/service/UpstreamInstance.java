@@ -0,0 +1,99 @@
+package com.khiem.gateway.service;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One instance of a downstream service and what the gateway has observed about it: requests in flight,
+ * a peak-sensitive EWMA of its latency and whether it is currently ejected.
+ *
+ * <p>The EWMA starts at a configured latency rather than zero, so an instance nobody has measured yet
+ * isn't taken for the fastest, and failures count as slow samples, so failing fast doesn't look fast.
+ */
+public class UpstreamInstance {
+    private final String service;
+    private final URI uri;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private double ewmaNanos;
+    private long lastSampleAt;
+    private int consecutiveFailures;
+    private int ejections;
+    private volatile boolean ejected;
+    private volatile long ejectedUntil;
+
+    public UpstreamInstance(String service, URI uri, long initialRttNanos) {
+        this.service = service;
+        this.uri = uri;
+        this.ewmaNanos = initialRttNanos;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public synchronized double getEwmaMillis() {
+        return ewmaNanos / 1_000_000;
+    }
+
+    // Expected wait for one more request: latency weighted by the queue in front of it
+    public synchronized double cost() {
+        return ewmaNanos * (inFlight.get() + 1);
+    }
+
+    public boolean isEjected(long now) {
+        return ejected && now - ejectedUntil < 0;
+    }
+
+    void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    void end() {
+        inFlight.decrementAndGet();
+    }
+
+    // A slower sample replaces the average at once, faster ones only pull it down over decayNanos
+    synchronized void onSuccess(long rttNanos, long now, long decayNanos) {
+        consecutiveFailures = 0;
+        if (ejected && !isEjected(now)) {
+            ejected = false;
+            ejections = 0;
+        }
+        sample(rttNanos, now, decayNanos);
+    }
+
+    // Returns the number of failures in a row, including this one. The failure is sampled as taking at
+    // least penaltyNanos
+    synchronized int onFailure(long rttNanos, long penaltyNanos, long now, long decayNanos) {
+        sample(Math.max(rttNanos, penaltyNanos), now, decayNanos);
+        return ++consecutiveFailures;
+    }
+
+    private void sample(long rttNanos, long now, long decayNanos) {
+        if (lastSampleAt == 0 || rttNanos > ewmaNanos) {
+            ewmaNanos = rttNanos;
+        } else {
+            double weight = Math.exp(-(double) Math.max(0, now - lastSampleAt) / decayNanos);
+            ewmaNanos = ewmaNanos * weight + rttNanos * (1 - weight);
+        }
+        lastSampleAt = now;
+    }
+
+    synchronized long eject(long now, long baseNanos, long maxNanos) {
+        ejections++;
+        long duration = Math.min(maxNanos, baseNanos * ejections);
+        consecutiveFailures = 0;
+        ejectedUntil = now + duration;
+        ejected = true;
+        return duration;
+    }
+}
@@ -0,0 +1,185 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.configuration.LoadBalancerProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks an instance of a downstream service with power-of-two-choices: two random instances are compared
+ * and the one with the lower latency EWMA times in-flight requests wins. Instances that fail
+ * {@code ejection.consecutive-failures} times in a row are skipped for a growing ejection time.
+ *
+ * <p>If every instance is ejected the service is balanced across all of them anyway, answering slowly
+ * beats not answering at all.
+ *
+ * <p>Requests with a hash key are placed on a {@link ConsistentHashRing} instead, so the same key keeps
+ * reaching the same instance.
+ */
+@Slf4j
+@Service
+public class UpstreamLoadBalancer {
+    private final Map<String, List<UpstreamInstance>> instances = new HashMap<>();
+    private final Map<String, ConsistentHashRing> rings = new HashMap<>();
+    private final Map<String, Counter> spilledCounters = new HashMap<>();
+    private final Map<UpstreamInstance, Counter> ejectionCounters = new HashMap<>();
+    private final LoadBalancerProperties.Ejection ejection;
+    private final long decayNanos;
+    private final long failurePenaltyNanos;
+    private final double loadFactor;
+
+    public UpstreamLoadBalancer(LoadBalancerProperties properties, MeterRegistry meterRegistry) {
+        this.ejection = properties.getEjection();
+        this.decayNanos = properties.getDecayTime().toNanos();
+        this.failurePenaltyNanos = properties.getFailurePenalty().toNanos();
+        this.loadFactor = properties.getConsistentHash().getLoadFactor();
+
+        properties.getServices().forEach((service, uris) -> {
+            List<UpstreamInstance> serviceInstances = uris.stream()
+                    .distinct()
+                    .map(uri -> new UpstreamInstance(service, uri, properties.getInitialRtt().toNanos()))
+                    .toList();
+            instances.put(service, serviceInstances);
+            rings.put(service, new ConsistentHashRing(serviceInstances, properties.getConsistentHash().getVirtualNodes()));
+            spilledCounters.put(service, Counter.builder("gateway.lb.hash.spilled")
+                    .description("Requests with a hash key sent past the key's instance because it was overloaded or ejected")
+                    .tag("service", service)
+                    .register(meterRegistry));
+            serviceInstances.forEach(instance -> register(instance, meterRegistry));
+        });
+    }
+
+    // Returns null when the service has no instances, the caller must complete or cancel what it got
+    public UpstreamInstance choose(String service) {
+        List<UpstreamInstance> candidates = instances.get(service);
+        if (candidates == null || candidates.isEmpty())
+            return null;
+
+        UpstreamInstance chosen = candidates.size() == 1 ? candidates.getFirst() : chooseOfTwo(candidates);
+        chosen.begin();
+        return chosen;
+    }
+
+    // Same as choose, but requests with the same key go to the same instance while it can take them
+    public UpstreamInstance choose(String service, String key) {
+        ConsistentHashRing ring = rings.get(service);
+        ConsistentHashRing.Choice choice = ring != null ? ring.choose(key, loadFactor, System.nanoTime()) : null;
+        if (choice == null)
+            return null;
+
+        if (choice.spilled())
+            spilledCounters.get(service).increment();
+        choice.instance().begin();
+        return choice.instance();
+    }
+
+    // Same as choose, but never the excluded instance, e.g. the one a hedged request is already waiting on.
+    // Returns null when the service has no other instance
+    public UpstreamInstance chooseOther(String service, UpstreamInstance excluded) {
+        List<UpstreamInstance> candidates = instances.getOrDefault(service, List.of()).stream()
+                .filter(candidate -> candidate != excluded)
+                .toList();
+        if (candidates.isEmpty())
+            return null;
+
+        UpstreamInstance chosen = candidates.size() == 1 ? candidates.getFirst() : chooseOfTwo(candidates);
+        chosen.begin();
+        return chosen;
+    }
+
+    public void complete(UpstreamInstance instance, long rttNanos, boolean failed) {
+        instance.end();
+        long now = System.nanoTime();
+        if (!failed) {
+            instance.onSuccess(rttNanos, now, decayNanos);
+            return;
+        }
+
+        int failures = instance.onFailure(rttNanos, failurePenaltyNanos, now, decayNanos);
+        if (failures >= ejection.getConsecutiveFailures() && mayEject(instance, now)) {
+            long duration = instance.eject(now, ejection.getBaseTime().toNanos(), ejection.getMaxTime().toNanos());
+            ejectionCounters.get(instance).increment();
+            log.warn("Ejected {} instance {} for {}", instance.getService(), instance.getUri(), Duration.ofNanos(duration));
+        }
+    }
+
+    public void cancel(UpstreamInstance instance) {
+        instance.end();
+    }
+
+    // The URI of the request rewritten to point at the instance, path and query are kept
+    public static URI resolve(URI requestUrl, UpstreamInstance instance) {
+        URI target = instance.getUri();
+        return UriComponentsBuilder.fromUri(requestUrl)
+                .scheme(target.getScheme())
+                .host(target.getHost())
+                .port(target.getPort())
+                .build(true)
+                .toUri();
+    }
+
+    private UpstreamInstance chooseOfTwo(List<UpstreamInstance> candidates) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.nanoTime();
+        int size = candidates.size();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first)
+            second++;
+
+        UpstreamInstance a = candidates.get(first);
+        UpstreamInstance b = candidates.get(second);
+        boolean aEjected = a.isEjected(now);
+        boolean bEjected = b.isEjected(now);
+
+        if (aEjected && bEjected) {
+            for (UpstreamInstance candidate : candidates) {
+                if (!candidate.isEjected(now))
+                    return candidate;
+            }
+        } else if (aEjected) {
+            return b;
+        } else if (bEjected) {
+            return a;
+        }
+        return a.cost() <= b.cost() ? a : b;
+    }
+
+    private boolean mayEject(UpstreamInstance instance, long now) {
+        List<UpstreamInstance> serviceInstances = instances.get(instance.getService());
+        long ejected = serviceInstances.stream().filter(candidate -> candidate.isEjected(now)).count();
+        long allowed = Math.max(1, serviceInstances.size() * ejection.getMaxPercent() / 100);
+        return ejected < allowed;
+    }
+
+    private void register(UpstreamInstance instance, MeterRegistry meterRegistry) {
+        Tags tags = Tags.of("service", instance.getService(), "instance", instance.getUri().getAuthority());
+        Gauge.builder("gateway.lb.instance.latency", instance, UpstreamInstance::getEwmaMillis)
+                .description("Peak EWMA latency of the instance in milliseconds")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("gateway.lb.instance.in-flight", instance, UpstreamInstance::getInFlight)
+                .description("Requests the gateway has open to the instance")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("gateway.lb.instance.ejected", instance, candidate -> candidate.isEjected(System.nanoTime()) ? 1 : 0)
+                .description("1 while the instance is out of rotation")
+                .tags(tags)
+                .register(meterRegistry);
+        ejectionCounters.put(instance, Counter.builder("gateway.lb.instance.ejections")
+                .description("Times the instance was taken out of rotation")
+                .tags(tags)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,237 @@
+package com.khiem.gateway;
+
+import com.khiem.gateway.service.LatencySketch;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures what the gateway adds to a request. identity (introspect), post, profile and bookx are
+ * replaced by in-JVM stubs that answer at once, and the gateway is started once per variant with the
+ * auth filter, rate limiter and circuit breaker switched on or off, so the difference between variants
+ * is the cost of that feature. Access log, route metrics and load balancing stay on in every variant.
+ *
+ * <p>Load is an open model: requests are sent at a fixed rate whatever the gateway's response times,
+ * and latency is measured from when a request was due, so a stalled gateway shows up in the tail
+ * instead of slowing the generator down. Redis isn't started; without one the rate limiter keeps
+ * deciding from its local buckets and logs the failed syncs.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.khiem.gateway.GatewayOverheadHarness -Dload.rate=2000 -Dload.duration=20
+ * </pre>
+ */
+public class GatewayOverheadHarness {
+    static final String SIGNER_KEY = "1TjXchw5FloESb63Kc+DFhTARvpWL4jUGCwfGWxuG5SIf/1y/LgJxHnMqaF6A/ij";
+    static final String INTROSPECT_VALID = "{\"code\":1000,\"result\":{\"valid\":true}}";
+    static final String BODY = "{\"code\":1000,\"result\":{\"id\":\"1\",\"title\":\"load test\"}}";
+    static final String[] PATHS = {"/api/v1/post/", "/api/v1/profile/users/my-profile", "/api/v1/book/books/1"};
+
+    enum Variant {
+        BASELINE(false, false, false),
+        AUTH(true, false, false),
+        RATE_LIMITER(false, true, false),
+        CIRCUIT_BREAKER(false, false, true),
+        ALL(true, true, true);
+
+        final boolean auth;
+        final boolean rateLimiter;
+        final boolean circuitBreaker;
+
+        Variant(boolean auth, boolean rateLimiter, boolean circuitBreaker) {
+            this.auth = auth;
+            this.rateLimiter = rateLimiter;
+            this.circuitBreaker = circuitBreaker;
+        }
+    }
+
+    record Result(Variant variant, long requests, long errors, double throughput, LatencySketch latency) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = Integer.getInteger("load.rate", 2000);
+        Duration warmup = Duration.ofSeconds(Long.getLong("load.warmup", 5));
+        Duration duration = Duration.ofSeconds(Long.getLong("load.duration", 20));
+
+        DisposableServer identity = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .route(routes -> routes.post("/identity/auth/introspect", (request, response) -> response
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .sendString(Mono.just(INTROSPECT_VALID))))
+                .bindNow();
+        DisposableServer post = stub();
+        DisposableServer profile = stub();
+        DisposableServer bookx = stub();
+        String token = signToken();
+
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Variant variant : Variant.values()) {
+                try (ConfigurableApplicationContext gateway = new SpringApplicationBuilder(ApiGatewayApplication.class)
+                        .run(arguments(variant, identity, post, profile, bookx))) {
+                    int port = Integer.parseInt(gateway.getEnvironment().getRequiredProperty("local.server.port"));
+                    ConnectionProvider connections = ConnectionProvider.builder("load")
+                            .maxConnections(2000)
+                            .pendingAcquireMaxCount(-1)
+                            .build();
+                    HttpClient client = HttpClient.create(connections)
+                            .baseUrl("http://localhost:" + port)
+                            .headers(headers -> headers.set(HttpHeaders.AUTHORIZATION, "Bearer " + token));
+
+                    drive(client, variant, rate, warmup);
+                    results.add(drive(client, variant, rate, duration));
+                    connections.disposeLater().block();
+                }
+            }
+        } finally {
+            identity.disposeNow();
+            post.disposeNow();
+            profile.disposeNow();
+            bookx.disposeNow();
+        }
+
+        System.out.printf("%n%-16s %10s %12s %8s %9s %9s %9s%n",
+                "variant", "target/s", "achieved/s", "errors", "p50 ms", "p99 ms", "p999 ms");
+        for (Result result : results) {
+            List<LatencySketch> latency = List.of(result.latency());
+            System.out.printf("%-16s %10d %12.0f %8d %9.3f %9.3f %9.3f%n",
+                    result.variant(), rate, result.throughput(), result.errors(),
+                    LatencySketch.quantile(latency, 0.5) / 1e6,
+                    LatencySketch.quantile(latency, 0.99) / 1e6,
+                    LatencySketch.quantile(latency, 0.999) / 1e6);
+        }
+    }
+
+    static DisposableServer stub() {
+        return HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .handle((request, response) -> response
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .sendString(Mono.just(BODY)))
+                .bindNow();
+    }
+
+    // Command line arguments take precedence over application.yaml, and a list given here replaces the yaml one
+    static String[] arguments(Variant variant, DisposableServer identity, DisposableServer post,
+                              DisposableServer profile, DisposableServer bookx) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--app.auth.identity-url=http://localhost:" + identity.port() + "/identity",
+                "--app.auth.revocation-feed.enabled=false",
+                "--app.load-balancer.services.post-service=http://localhost:" + post.port(),
+                "--app.load-balancer.services.profile-service=http://localhost:" + profile.port(),
+                "--app.load-balancer.services.bookx-service=http://localhost:" + bookx.port(),
+                "--spring.data.redis.host=" + System.getProperty("redis.host", "localhost"),
+                "--logging.level.root=WARN"));
+
+        if (!variant.auth)
+            arguments.add("--app.auth.public-endpoints[0].path=/**");
+
+        if (variant.circuitBreaker) {
+            arguments.add("--spring.cloud.gateway.default-filters[0].name=CircuitBreaker");
+            arguments.add("--spring.cloud.gateway.default-filters[0].args.name=loadTestCB");
+            arguments.add("--spring.cloud.gateway.default-filters[0].args.fallbackUri=forward:/fallback");
+        } else {
+            arguments.add("--spring.cloud.gateway.default-filters=");
+        }
+
+        String[][] routes = {
+                {"post_service", "post-service", "/api/v1/post/**"},
+                {"profile_service", "profile-service", "/api/v1/profile/users/**"},
+                {"book_service_query", "bookx-service", "/api/v1/book/books/**"}};
+        for (int i = 0; i < routes.length; i++) {
+            String route = "--spring.cloud.gateway.routes[" + i + "]";
+            arguments.add(route + ".id=" + routes[i][0]);
+            arguments.add(route + ".uri=instances://" + routes[i][1]);
+            arguments.add(route + ".predicates[0]=Path=" + routes[i][2]);
+            arguments.add(route + ".filters[0]=StripPrefix=2");
+            if (variant.rateLimiter) {
+                // Limits no load test reaches, so every request pays for the decision but none is denied
+                String filter = route + ".filters[1]";
+                arguments.add(filter + ".name=RequestRateLimiter");
+                arguments.add(filter + ".args.hybrid-rate-limiter.replenishRate=1000000");
+                arguments.add(filter + ".args.hybrid-rate-limiter.burstCapacity=2000000");
+                arguments.add(filter + ".args.rate-limiter=#{@hybridRateLimiter}");
+                arguments.add(filter + ".args.key-resolver=#{@principalKeyResolver}");
+            }
+        }
+        return arguments.toArray(String[]::new);
+    }
+
+    // Sends rate requests per second for the duration, cycling through PATHS, and waits for the last answers
+    static Result drive(HttpClient client, Variant variant, int rate, Duration duration) throws InterruptedException {
+        long total = rate * duration.toSeconds();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        LatencySketch latency = new LatencySketch();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch((int) total);
+
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long due = start + i * intervalNanos;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0)
+                LockSupport.parkNanos(wait);
+
+            client.get()
+                    .uri(PATHS[(int) (i % PATHS.length)])
+                    .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                    .subscribe(status -> {
+                        latency.record(System.nanoTime() - due);
+                        if (status >= 400)
+                            errors.incrementAndGet();
+                        done.countDown();
+                    }, throwable -> {
+                        latency.record(System.nanoTime() - due);
+                        errors.incrementAndGet();
+                        done.countDown();
+                    });
+        }
+        if (!done.await(30, TimeUnit.SECONDS))
+            errors.addAndGet(done.getCount());
+        long elapsed = System.nanoTime() - start;
+
+        long completed = total - done.getCount();
+        return new Result(variant, total, errors.get(), completed * 1e9 / elapsed, latency);
+    }
+
+    static String signToken() throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject("load-test-user")
+                .issuer("bookvault.com")
+                .issueTime(new Date())
+                .expirationTime(Date.from(Instant.now().plus(1, ChronoUnit.HOURS)))
+                .jwtID(UUID.randomUUID().toString())
+                .claim("scope", "ROLE_USER")
+                .build();
+
+        SignedJWT signedJWT = new SignedJWT(new JWSHeader(JWSAlgorithm.HS512), claims);
+        signedJWT.sign(new MACSigner(SIGNER_KEY.getBytes()));
+        return signedJWT.serialize();
+    }
+}
@@ -0,0 +1,186 @@
+package com.khiem.gateway;
+
+import com.khiem.gateway.service.LatencySketch;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares the gateway's HTTP/1.1 upstream client with h2c, asking for an upgrade and with prior
+ * knowledge, against an in-JVM stub that speaks both and answers after {@code stub.delay} milliseconds.
+ *
+ * <p>Load is bursty: every {@code load.burst-interval} milliseconds a burst of requests is sent at once,
+ * {@code load.rate} per second on average. Over HTTP/1.1 each request of a burst needs a connection of
+ * its own, so bursts open connections that idle until the next one; over h2c they become streams on
+ * a few pooled connections. The route carries post_service's Hedge filter, so hedged attempts share
+ * the client under test. Latency is measured from when a burst was due. The connections column is how
+ * many the upstream pool holds at the end of the run.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.khiem.gateway.H2cUpstreamHarness -Dload.rate=5000 -Dload.duration=20
+ * </pre>
+ */
+public class H2cUpstreamHarness {
+    static final String PATH = "/api/v1/post/";
+
+    enum Variant {
+        HTTP11(null, false),
+        H2C_UPGRADE("h2c", false),
+        H2C_PRIOR_KNOWLEDGE("h2c", true);
+
+        final String protocol;
+        final boolean priorKnowledge;
+
+        Variant(String protocol, boolean priorKnowledge) {
+            this.protocol = protocol;
+            this.priorKnowledge = priorKnowledge;
+        }
+    }
+
+    record Result(Variant variant, long requests, long errors, double throughput, LatencySketch latency,
+                  double connections) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = Integer.getInteger("load.rate", 5000);
+        Duration burstInterval = Duration.ofMillis(Long.getLong("load.burst-interval", 100));
+        Duration warmup = Duration.ofSeconds(Long.getLong("load.warmup", 5));
+        Duration duration = Duration.ofSeconds(Long.getLong("load.duration", 20));
+        Duration delay = Duration.ofMillis(Long.getLong("stub.delay", 5));
+
+        DisposableServer post = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .handle((request, response) -> response
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .sendString(Mono.delay(delay).thenReturn(GatewayOverheadHarness.BODY)))
+                .bindNow();
+
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Variant variant : Variant.values()) {
+                try (ConfigurableApplicationContext gateway = new SpringApplicationBuilder(ApiGatewayApplication.class)
+                        .run(arguments(variant, post))) {
+                    int port = Integer.parseInt(gateway.getEnvironment().getRequiredProperty("local.server.port"));
+                    ConnectionProvider connections = ConnectionProvider.builder("load")
+                            .maxConnections(5000)
+                            .pendingAcquireMaxCount(-1)
+                            .build();
+                    HttpClient client = HttpClient.create(connections).baseUrl("http://localhost:" + port);
+
+                    drive(client, variant, rate, burstInterval, warmup);
+                    results.add(drive(client, variant, rate, burstInterval, duration));
+                    connections.disposeLater().block();
+                }
+            }
+        } finally {
+            post.disposeNow();
+        }
+
+        System.out.printf("%n%-20s %10s %12s %8s %9s %9s %9s %12s%n",
+                "variant", "target/s", "achieved/s", "errors", "p50 ms", "p99 ms", "p999 ms", "connections");
+        for (Result result : results) {
+            List<LatencySketch> latency = List.of(result.latency());
+            System.out.printf("%-20s %10d %12.0f %8d %9.3f %9.3f %9.3f %12.0f%n",
+                    result.variant(), rate, result.throughput(), result.errors(),
+                    LatencySketch.quantile(latency, 0.5) / 1e6,
+                    LatencySketch.quantile(latency, 0.99) / 1e6,
+                    LatencySketch.quantile(latency, 0.999) / 1e6,
+                    result.connections());
+        }
+    }
+
+    // A single public route to the stub with post_service's Hedge filter and without the default filters,
+    // so only the upstream protocol differs
+    static String[] arguments(Variant variant, DisposableServer post) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--app.auth.public-endpoints[0].path=/**",
+                "--app.auth.revocation-feed.enabled=false",
+                "--app.admission.enabled=false",
+                "--app.load-balancer.services.post-service=http://localhost:" + post.port(),
+                "--app.upstream.h2c.prior-knowledge=" + variant.priorKnowledge,
+                "--spring.data.redis.host=" + System.getProperty("redis.host", "localhost"),
+                "--spring.cloud.gateway.default-filters=",
+                "--spring.cloud.gateway.routes[0].id=post_service",
+                "--spring.cloud.gateway.routes[0].uri=instances://post-service",
+                "--spring.cloud.gateway.routes[0].predicates[0]=Path=/api/v1/post/**",
+                "--spring.cloud.gateway.routes[0].filters[0]=StripPrefix=2",
+                "--spring.cloud.gateway.routes[0].filters[1]=Hedge",
+                "--logging.level.root=WARN"));
+        if (variant.protocol != null)
+            arguments.add("--spring.cloud.gateway.routes[0].metadata.protocol=" + variant.protocol);
+        return arguments.toArray(String[]::new);
+    }
+
+    // Sends rate requests per second for the duration in bursts, and waits for the last answers
+    static Result drive(HttpClient client, Variant variant, int rate, Duration burstInterval, Duration duration)
+            throws InterruptedException {
+        long bursts = duration.toMillis() / burstInterval.toMillis();
+        int burstSize = (int) Math.max(1, rate * burstInterval.toMillis() / 1000);
+        long total = bursts * burstSize;
+        LatencySketch latency = new LatencySketch();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch((int) total);
+
+        long start = System.nanoTime();
+        for (long burst = 0; burst < bursts; burst++) {
+            long due = start + burst * burstInterval.toNanos();
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0)
+                LockSupport.parkNanos(wait);
+
+            for (int i = 0; i < burstSize; i++) {
+                client.get()
+                        .uri(PATH)
+                        .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                        .subscribe(status -> {
+                            latency.record(System.nanoTime() - due);
+                            if (status >= 400)
+                                errors.incrementAndGet();
+                            done.countDown();
+                        }, throwable -> {
+                            latency.record(System.nanoTime() - due);
+                            errors.incrementAndGet();
+                            done.countDown();
+                        });
+            }
+        }
+        if (!done.await(30, TimeUnit.SECONDS))
+            errors.addAndGet(done.getCount());
+        long elapsed = System.nanoTime() - start;
+
+        long completed = total - done.getCount();
+        return new Result(variant, total, errors.get(), completed * 1e9 / elapsed, latency, connections());
+    }
+
+    // Connections held by the gateway's upstream pools, the HTTP/1.1 one or the route's h2c one;
+    // reactor-netty registers its pool gauges globally
+    static double connections() {
+        return Metrics.globalRegistry.find("reactor.netty.connection.provider.total.connections")
+                .gauges()
+                .stream()
+                .filter(gauge -> List.of("proxy", "upstream-post_service").contains(gauge.getId().getTag("name")))
+                .mapToDouble(Gauge::value)
+                .sum();
+    }
+}
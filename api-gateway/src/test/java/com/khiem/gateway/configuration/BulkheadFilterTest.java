@@ -0,0 +1,94 @@
+package com.khiem.gateway.configuration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.DispatcherHandler;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class BulkheadFilterTest {
+    private final List<String> forwarded = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BulkheadFilter filter = filter(Map.of("chat-service", 1));
+
+    @Test
+    void filter_forwardsToTheFallbackOnceTheServiceIsFull() {
+        Disposable held = filter.filter(exchange("chat-service"), exchange -> Mono.never()).subscribe();
+
+        filter.filter(exchange("chat-service"), unexpected()).block();
+        // Another service keeps its own capacity
+        filter.filter(exchange("post-service"), exchange -> Mono.empty()).block();
+
+        assertThat(forwarded).containsExactly("/fallback");
+        assertThat(meterRegistry.get("gateway.bulkhead.rejected").tag("service", "chat-service").counter().count()).isEqualTo(1);
+        assertThat(inFlight()).isEqualTo(1);
+        held.dispose();
+    }
+
+    @Test
+    void filter_releasesThePermitOnCompleteErrorAndCancel() {
+        filter.filter(exchange("chat-service"), exchange -> Mono.empty()).block();
+        assertThat(inFlight()).isZero();
+
+        filter.filter(exchange("chat-service"), exchange -> Mono.error(new IllegalStateException("upstream")))
+                .onErrorComplete()
+                .block();
+        assertThat(inFlight()).isZero();
+
+        Disposable cancelled = filter.filter(exchange("chat-service"), exchange -> Mono.never()).subscribe();
+        assertThat(inFlight()).isEqualTo(1);
+        cancelled.dispose();
+        assertThat(inFlight()).isZero();
+
+        filter.filter(exchange("chat-service"), exchange -> Mono.empty()).block();
+        assertThat(forwarded).isEmpty();
+    }
+
+    private double inFlight() {
+        return meterRegistry.get("gateway.bulkhead.in-flight").tag("service", "chat-service").gauge().value();
+    }
+
+    private BulkheadFilter filter(Map<String, Integer> bulkheads) {
+        ResilienceProperties properties = new ResilienceProperties();
+        properties.setDefaultBulkhead(0);
+        properties.setBulkheads(bulkheads);
+
+        // Records where the fallback forward went instead of dispatching it
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("dispatcherHandler", new DispatcherHandler() {
+            @Override
+            public Mono<Void> handle(ServerWebExchange exchange) {
+                forwarded.add(exchange.getRequest().getPath().value());
+                return Mono.empty();
+            }
+        });
+        return new BulkheadFilter(properties, meterRegistry, beans.getBeanProvider(DispatcherHandler.class));
+    }
+
+    private static MockServerWebExchange exchange(String service) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/chat/messages"));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async()
+                .id(service.replace('-', '_'))
+                .uri("instances://" + service)
+                .predicate(routed -> true)
+                .build());
+        return exchange;
+    }
+
+    private static GatewayFilterChain unexpected() {
+        return exchange -> Mono.error(new AssertionError("routed past a full bulkhead"));
+    }
+}
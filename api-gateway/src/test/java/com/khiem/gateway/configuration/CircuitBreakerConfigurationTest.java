@@ -0,0 +1,52 @@
+package com.khiem.gateway.configuration;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigurationProperties;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerConfigurationTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReactiveResilience4JCircuitBreakerFactory factory = new ReactiveResilience4JCircuitBreakerFactory(
+            CircuitBreakerRegistry.ofDefaults(), TimeLimiterRegistry.ofDefaults(), new Resilience4JConfigurationProperties());
+
+    @Test
+    void routeCircuitBreakers_configuresEachRouteFromItsOwnProperties() {
+        ResilienceProperties.RouteResilience chat = new ResilienceProperties.RouteResilience();
+        chat.getCircuitBreaker().setFailureRateThreshold(30);
+        chat.getCircuitBreaker().setMinimumNumberOfCalls(20);
+        chat.getCircuitBreaker().setWaitInOpenState(Duration.ofSeconds(15));
+        ResilienceProperties properties = new ResilienceProperties();
+        properties.setRoutes(Map.of("chat_service", chat));
+        new CircuitBreakerConfiguration().routeCircuitBreakers(properties, meterRegistry).customize(factory);
+
+        CircuitBreakerConfig chatConfig = breaker("chat_service").getCircuitBreakerConfig();
+        assertThat(chatConfig.getFailureRateThreshold()).isEqualTo(30);
+        assertThat(chatConfig.getMinimumNumberOfCalls()).isEqualTo(20);
+        // Routes not listed keep resilience4j's defaults
+        CircuitBreakerConfig postConfig = breaker("post_service").getCircuitBreakerConfig();
+        assertThat(postConfig.getFailureRateThreshold()).isEqualTo(50);
+        assertThat(postConfig.getMinimumNumberOfCalls()).isEqualTo(100);
+
+        breaker("chat_service").transitionToOpenState();
+        assertThat(breaker("post_service").getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(meterRegistry.get("gateway.circuitbreaker.state").tag("name", "chat_service").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.circuitbreaker.state").tag("name", "post_service").gauge().value()).isZero();
+    }
+
+    // The gateway's CircuitBreaker filter creates the route's breaker on its first call, named after the route id
+    private CircuitBreaker breaker(String routeId) {
+        factory.create(routeId).run(Mono.just("ok")).block();
+        return factory.getCircuitBreakerRegistry().find(routeId).orElseThrow();
+    }
+}
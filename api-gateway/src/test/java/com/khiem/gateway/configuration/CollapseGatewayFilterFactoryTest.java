@@ -0,0 +1,96 @@
+package com.khiem.gateway.configuration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CollapseGatewayFilterFactoryTest {
+    private final GatewayFilter filter = filter();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    // Answers after a delay, so identical requests arrive while the first is in flight
+    private final GatewayFilterChain upstream = exchange -> {
+        upstreamCalls.incrementAndGet();
+        ServerHttpResponse response = exchange.getResponse();
+        return Mono.delay(Duration.ofMillis(50)).then(Mono.defer(() -> {
+            response.setStatusCode(HttpStatus.OK);
+            response.getHeaders().set(HttpHeaders.CACHE_CONTROL, "no-store");
+            return response.writeWith(Mono.just(response.bufferFactory()
+                    .wrap("{\"title\":\"viral\"}".getBytes(StandardCharsets.UTF_8))));
+        }));
+    };
+
+    @Test
+    void filter_sharesOneCallAmongIdenticalRequests() {
+        MockServerWebExchange first = exchange("Bearer a.b.c");
+        MockServerWebExchange second = exchange("Bearer a.b.c");
+
+        Mono.when(filter.filter(first, upstream), filter.filter(second, upstream)).block();
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo("{\"title\":\"viral\"}");
+        assertThat(first.getResponse().getBodyAsString().block()).isEqualTo("{\"title\":\"viral\"}");
+    }
+
+    @Test
+    void filter_keepsCallsOfDifferentCallersApart() {
+        Mono.when(filter.filter(exchange("Bearer a.b.c"), upstream), filter.filter(exchange("Bearer d.e.f"), upstream))
+                .block();
+
+        assertThat(upstreamCalls).hasValue(2);
+    }
+
+    @Test
+    void filter_streamsChunkedBodyOverTheLimit_andReleasesWaiters() {
+        GatewayFilter filter = filter(8);
+        // No Content-Length, the body only turns out to be too large while it streams
+        GatewayFilterChain chunked = exchange -> {
+            upstreamCalls.incrementAndGet();
+            ServerHttpResponse response = exchange.getResponse();
+            return Mono.delay(Duration.ofMillis(50)).then(Mono.defer(() -> {
+                response.setStatusCode(HttpStatus.OK);
+                return response.writeWith(Flux.just("{\"page\":", "[1,2,3]", "}")
+                        .map(chunk -> response.bufferFactory().wrap(chunk.getBytes(StandardCharsets.UTF_8))));
+            }));
+        };
+        MockServerWebExchange first = exchange("Bearer a.b.c");
+        MockServerWebExchange second = exchange("Bearer a.b.c");
+
+        Mono.when(filter.filter(first, chunked), filter.filter(second, chunked)).block();
+
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(first.getResponse().getBodyAsString().block()).isEqualTo("{\"page\":[1,2,3]}");
+        assertThat(second.getResponse().getBodyAsString().block()).isEqualTo("{\"page\":[1,2,3]}");
+    }
+
+    private static GatewayFilter filter() {
+        return filter(1048576);
+    }
+
+    private static GatewayFilter filter(int maxBodyBytes) {
+        CollapseGatewayFilterFactory.Config config = new CollapseGatewayFilterFactory.Config();
+        config.setRouteId("book_service_query");
+        config.setMaxBodyBytes(maxBodyBytes);
+        return new CollapseGatewayFilterFactory(new SimpleMeterRegistry()).apply(config);
+    }
+
+    private static MockServerWebExchange exchange(String authorization) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/book/books/42")
+                .header(HttpHeaders.AUTHORIZATION, authorization));
+    }
+}
@@ -0,0 +1,67 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.ResponseCompressor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompressionGatewayFilterFactoryTest {
+    private static final String CHUNK = "{\"title\":\"load test\"},".repeat(50);
+
+    private final GatewayFilter filter = filter();
+
+    @Test
+    void filter_compressesChunkedBodyWithinTheLimit() {
+        MockServerWebExchange exchange = exchange();
+
+        filter.filter(exchange, chunked(2)).block();
+
+        assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    }
+
+    @Test
+    void filter_streamsChunkedBodyOverTheLimitUncompressed() {
+        MockServerWebExchange exchange = exchange();
+
+        filter.filter(exchange, chunked(6)).block();
+
+        assertThat(exchange.getResponse().getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(CHUNK.repeat(6));
+    }
+
+    // A JSON body of the given number of chunks without Content-Length
+    private static GatewayFilterChain chunked(int chunks) {
+        return exchange -> {
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.OK);
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            return response.writeWith(Flux.range(0, chunks)
+                    .map(i -> response.bufferFactory().wrap(CHUNK.getBytes(StandardCharsets.UTF_8))));
+        };
+    }
+
+    private static GatewayFilter filter() {
+        // CPU thresholds above 1 so a busy test machine doesn't switch compression off
+        ResponseCompressor compressor = new ResponseCompressor(new SimpleMeterRegistry(), 1 << 20, 1.1, 1.1);
+        CompressionGatewayFilterFactory.Config config = new CompressionGatewayFilterFactory.Config();
+        config.setMaxResponseSize(CHUNK.length() * 4);
+        return new CompressionGatewayFilterFactory(compressor, new SimpleMeterRegistry()).apply(config);
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/book/books")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+    }
+}
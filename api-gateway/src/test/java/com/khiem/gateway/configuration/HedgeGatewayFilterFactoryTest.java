@@ -0,0 +1,121 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.HedgeBudget;
+import com.khiem.gateway.service.UpstreamInstance;
+import com.khiem.gateway.service.UpstreamLoadBalancer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.ResolvableType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class HedgeGatewayFilterFactoryTest {
+    private static final URI BALANCED_URL = URI.create("instances://post-service/post/?page=1");
+
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DisposableServer first;
+    private DisposableServer second;
+    private UpstreamLoadBalancer loadBalancer;
+    private GatewayFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        first = slowStub("first");
+        second = slowStub("second");
+
+        LoadBalancerProperties properties = new LoadBalancerProperties();
+        properties.setServices(Map.of("post-service", List.of(
+                URI.create("http://localhost:" + first.port()),
+                URI.create("http://localhost:" + second.port()))));
+        loadBalancer = new UpstreamLoadBalancer(properties, meterRegistry);
+
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        ObjectProvider<List<HttpHeadersFilter>> headersFilters = noHeadersFilters(beans);
+        H2cRoutingFilter routingFilter = new H2cRoutingFilter(HttpClient.create(), headersFilters,
+                new HttpClientProperties(), beans.getBeanProvider(ServerProperties.class),
+                beans.getBeanProvider(HttpClientSslConfigurer.class), beans.getBeanProvider(HttpClientCustomizer.class),
+                new UpstreamH2cProperties());
+        HedgeGatewayFilterFactory.Config config = new HedgeGatewayFilterFactory.Config();
+        config.setRouteId("post_service");
+        config.setInitialDelay(Duration.ofMillis(20));
+        filter = new HedgeGatewayFilterFactory(WebClient.builder(), routingFilter, headersFilters,
+                new HedgeBudget(meterRegistry, 1.0, 10), loadBalancer, meterRegistry).apply(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        first.disposeNow();
+        second.disposeNow();
+    }
+
+    @Test
+    void filter_sendsTheHedgeToAnotherInstance_andReportsBothAttempts() {
+        UpstreamInstance primary = loadBalancer.choose("post-service");
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/post/?page=1"));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async()
+                .id("post_service")
+                .uri(BALANCED_URL)
+                .predicate(routed -> true)
+                .build());
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, UpstreamLoadBalancer.resolve(BALANCED_URL, primary));
+        exchange.getAttributes().put(UpstreamLoadBalancerFilter.UPSTREAM_INSTANCE_ATTRIBUTE, primary);
+        exchange.getAttributes().put(UpstreamLoadBalancerFilter.BALANCED_URL_ATTRIBUTE, BALANCED_URL);
+
+        filter.filter(exchange, unexpected -> Mono.error(new AssertionError("routed past the hedge"))).block();
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("answer");
+        assertThat(hits).containsOnlyKeys("first", "second");
+        assertThat(hits.values()).allSatisfy(count -> assertThat(count).hasValue(1));
+        // Attempts are reported when they terminate on the event loop, just after the response completes
+        Mono.delay(Duration.ofMillis(50)).block();
+        assertThat(meterRegistry.get("gateway.lb.instance.in-flight").gauges())
+                .allSatisfy(inFlight -> assertThat(inFlight.value()).isZero());
+        assertThat(exchange.getAttributes()).containsEntry(UpstreamLoadBalancerFilter.ATTEMPTS_REPORTED_ATTRIBUTE, true);
+    }
+
+    // Answers later than the hedge delay, so every request is hedged
+    private DisposableServer slowStub(String name) {
+        return HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .handle((request, response) -> {
+                    hits.computeIfAbsent(name, server -> new AtomicInteger()).incrementAndGet();
+                    return response.sendString(Mono.just("answer").delayElement(Duration.ofMillis(200)));
+                })
+                .bindNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<List<HttpHeadersFilter>> noHeadersFilters(DefaultListableBeanFactory beans) {
+        return (ObjectProvider<List<HttpHeadersFilter>>) (ObjectProvider<?>) beans
+                .getBeanProvider(ResolvableType.forClassWithGenerics(List.class, HttpHeadersFilter.class));
+    }
+}
@@ -0,0 +1,42 @@
+package com.khiem.gateway.configuration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HybridRateLimiterTest {
+
+    @Test
+    void applyGlobal_capsTheLocalBurstAtWhatIsLeftGlobally() {
+        HybridRateLimiter.Bucket bucket = new HybridRateLimiter.Bucket("route.user");
+        HybridRateLimiter.Config config = config(10, 20);
+
+        assertThat(bucket.tryConsume(config, 0, 0)).isEqualTo(19);
+
+        // other nodes used most of the shared burst
+        bucket.applyGlobal(2, 0);
+        assertThat(bucket.tryConsume(config, 0, 0)).isEqualTo(1);
+        assertThat(bucket.tryConsume(config, 0, 0)).isEqualTo(0);
+        assertThat(bucket.tryConsume(config, 0, 0)).isEqualTo(-1);
+    }
+
+    @Test
+    void applyGlobal_deniesUntilAnOverdrawnBucketIsRepaid() {
+        HybridRateLimiter.Bucket bucket = new HybridRateLimiter.Bucket("route.user");
+        HybridRateLimiter.Config config = config(10, 20);
+        bucket.tryConsume(config, 0, 0);
+
+        // 5 tokens of debt take 500ms to replenish at 10 per second
+        bucket.applyGlobal(-5, 1_000);
+
+        assertThat(bucket.tryConsume(config, 1_000_000_000L, 1_499)).isEqualTo(-1);
+        assertThat(bucket.tryConsume(config, 1_500_000_000L, 1_500)).isGreaterThanOrEqualTo(0);
+    }
+
+    private static HybridRateLimiter.Config config(int replenishRate, int burstCapacity) {
+        HybridRateLimiter.Config config = new HybridRateLimiter.Config();
+        config.setReplenishRate(replenishRate);
+        config.setBurstCapacity(burstCapacity);
+        return config;
+    }
+}
@@ -0,0 +1,108 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.dto.IdempotentResponse;
+import com.khiem.gateway.service.IdempotencyStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyGatewayFilterFactoryTest {
+    private static final String PATH = "/api/v1/payment/charge";
+
+    private final Map<String, IdempotentResponse> entries = new ConcurrentHashMap<>();
+    private final IdempotencyStore store = new IdempotencyStore(null, null) {
+        @Override
+        public Mono<Boolean> claim(String key, String fingerprint, Duration lockTimeout) {
+            return Mono.just(entries.putIfAbsent(key, IdempotentResponse.builder().fingerprint(fingerprint).build()) == null);
+        }
+
+        @Override
+        public Mono<Void> complete(String key, IdempotentResponse response, Duration ttl) {
+            return Mono.fromRunnable(() -> entries.put(key, response));
+        }
+
+        @Override
+        public Mono<Void> release(String key) {
+            return Mono.fromRunnable(() -> entries.remove(key));
+        }
+
+        @Override
+        public Mono<IdempotentResponse> find(String key) {
+            return Mono.justOrEmpty(entries.get(key));
+        }
+    };
+    private final AtomicInteger forwarded = new AtomicInteger();
+
+    @Test
+    void filter_replaysSameRequest_andRejectsKeyReusedForDifferentBody() {
+        GatewayFilter filter = filter(1024);
+
+        MockServerWebExchange first = charge("{\"amount\":10}");
+        filter.filter(first, upstream("charged")).block();
+        MockServerWebExchange repeated = charge("{\"amount\":10}");
+        filter.filter(repeated, upstream("charged")).block();
+
+        assertThat(forwarded).hasValue(1);
+        assertThat(repeated.getResponse().getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(repeated.getResponse().getHeaders().getFirst(IdempotencyGatewayFilterFactory.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(repeated.getResponse().getBodyAsString().block()).isEqualTo("charged");
+
+        assertThatThrownBy(() -> filter.filter(charge("{\"amount\":1000}"), upstream("charged")).block())
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+        assertThat(forwarded).hasValue(1);
+    }
+
+    @Test
+    void filter_streamsResponseOverTheLimitWithoutStoringIt() {
+        GatewayFilter filter = filter(4);
+
+        MockServerWebExchange exchange = charge("{\"amount\":10}");
+        filter.filter(exchange, upstream("char", "ged")).block();
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("charged");
+        assertThat(entries).isEmpty();
+    }
+
+    private GatewayFilter filter(int maxBodyBytes) {
+        IdempotencyGatewayFilterFactory.Config config = new IdempotencyGatewayFilterFactory.Config();
+        config.setRouteId("payment_service");
+        config.setMaxBodyBytes(maxBodyBytes);
+        return new IdempotencyGatewayFilterFactory(store, new SimpleMeterRegistry()).apply(config);
+    }
+
+    // Reads the whole request like the routing filter does, then answers with the given chunks
+    private GatewayFilterChain upstream(String... chunks) {
+        return exchange -> exchange.getRequest().getBody()
+                .doOnNext(DataBufferUtils::release)
+                .then(Mono.defer(() -> {
+                    forwarded.incrementAndGet();
+                    exchange.getResponse().setStatusCode(HttpStatus.CREATED);
+                    return exchange.getResponse().writeWith(Flux.just(chunks)
+                            .map(chunk -> exchange.getResponse().bufferFactory().wrap(chunk.getBytes(StandardCharsets.UTF_8))));
+                }));
+    }
+
+    private static MockServerWebExchange charge(String body) {
+        return MockServerWebExchange.from(MockServerHttpRequest.post(PATH + "?currency=VND")
+                .header(IdempotencyGatewayFilterFactory.KEY_HEADER, "7d4e")
+                .body(body));
+    }
+}
@@ -0,0 +1,78 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.dto.ImmutableContent;
+import com.khiem.gateway.service.ImmutableContentCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImmutableCacheGatewayFilterFactoryTest {
+    private static final String PATH = "/api/v1/file/media/download/3f2a.png";
+
+    private final ImmutableContentCache cache = new ImmutableContentCache(new SimpleMeterRegistry(), 1 << 20, 1 << 16);
+    private final GatewayFilter filter = new ImmutableCacheGatewayFilterFactory(cache, new SimpleMeterRegistry())
+            .apply(new ImmutableCacheGatewayFilterFactory.Config());
+    private final ImmutableContent content = cache.store(PATH, new HttpHeaders(), "abcdefghij".getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    void filter_answersRangeFromCachedBytes() {
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get(PATH).header(HttpHeaders.RANGE, "bytes=2-4"));
+
+        filter.filter(exchange, unexpected -> Mono.error(new AssertionError("upstream called"))).block();
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-4/10");
+        assertThat(exchange.getResponse().getHeaders().getCacheControl()).contains("immutable");
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("cde");
+    }
+
+    @Test
+    void filter_rejectsRangeBeyondTheEnd() {
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get(PATH).header(HttpHeaders.RANGE, "bytes=10-"));
+
+        filter.filter(exchange, unexpected -> Mono.error(new AssertionError("upstream called"))).block();
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+    }
+
+    @Test
+    void filter_answersMatchingEtagWithNotModified() {
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get(PATH)
+                .header(HttpHeaders.IF_NONE_MATCH, content.getEtag()));
+
+        filter.filter(exchange, unexpected -> Mono.error(new AssertionError("upstream called"))).block();
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    void filter_streamsBodyOfUnknownLengthWithoutStoringIt() {
+        String path = "/api/v1/file/media/download/9c41.png";
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get(path));
+
+        filter.filter(exchange, routed -> {
+            routed.getResponse().setStatusCode(HttpStatus.OK);
+            return routed.getResponse().writeWith(Flux.just("abc", "def")
+                    .map(chunk -> routed.getResponse().bufferFactory().wrap(chunk.getBytes(StandardCharsets.UTF_8))));
+        }).block();
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("abcdef");
+        assertThat(exchange.getResponse().getHeaders().getCacheControl()).contains("immutable");
+        assertThat(cache.get(path)).isNull();
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return MockServerWebExchange.from(request);
+    }
+}
@@ -0,0 +1,101 @@
+package com.khiem.gateway.configuration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of deciding whether one request is public: the precompiled {@link PublicEndpointMatcher} against
+ * the {@code String.matches} loop it replaced.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.khiem.gateway.configuration.PublicEndpointMatcherBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublicEndpointMatcherBenchmark {
+    static final String API_PREFIX = "/api/v1";
+    static final String[] LEGACY_PUBLIC_ENDPOINTS = {
+            "/identity/auth/.*",
+            "/identity/users/registration",
+            "/notification/email/send",
+            "/file/media/download/.*",
+            "/transaction.*",
+            "/statistics.*"
+    };
+
+    // A public hit, a method-specific hit and a protected path that has to be checked against every rule
+    @Param({"/api/v1/identity/auth/token", "/api/v1/books/42", "/api/v1/post/my-posts"})
+    String path;
+
+    PublicEndpointMatcher matcher;
+    MockServerHttpRequest request;
+
+    @Setup
+    public void setUp() {
+        PublicEndpointProperties.PublicEndpoint books = endpoint("/books/**");
+        books.setMethods(List.of("GET"));
+
+        PublicEndpointProperties properties = new PublicEndpointProperties();
+        properties.setPublicEndpoints(List.of(
+                endpoint("/identity/auth/**"),
+                endpoint("/identity/users/registration"),
+                endpoint("/notification/email/send"),
+                endpoint("/file/media/download/**"),
+                endpoint("/transaction/**"),
+                endpoint("/statistics/**"),
+                books));
+
+        matcher = new PublicEndpointMatcher(properties, API_PREFIX);
+        request = MockServerHttpRequest.get(path).build();
+    }
+
+    @Benchmark
+    public boolean precompiled() {
+        return matcher.matches(request);
+    }
+
+    @Benchmark
+    public boolean legacyRegex() {
+        String requestPath = request.getURI().getPath();
+        if (Arrays.stream(LEGACY_PUBLIC_ENDPOINTS).anyMatch(s -> requestPath.matches(API_PREFIX + s)))
+            return true;
+
+        return requestPath.matches(API_PREFIX + "/books.*") && request.getMethod() == HttpMethod.GET;
+    }
+
+    static PublicEndpointProperties.PublicEndpoint endpoint(String path) {
+        PublicEndpointProperties.PublicEndpoint endpoint = new PublicEndpointProperties.PublicEndpoint();
+        endpoint.setPath(path);
+        return endpoint;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PublicEndpointMatcherBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,65 @@
+package com.khiem.gateway.configuration;
+
+import com.khiem.gateway.service.UpstreamLoadBalancer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+class UpstreamLoadBalancerFilterTest {
+    private final Route route = Route.async()
+            .id("chat_service")
+            .uri("instances://chat-service")
+            .predicate(exchange -> true)
+            .metadata(Map.of(
+                    UpstreamLoadBalancerFilter.LOAD_BALANCING_METADATA, "consistent-hash",
+                    UpstreamLoadBalancerFilter.HASH_KEY_METADATA, "conversationId"))
+            .build();
+    private final UpstreamLoadBalancerFilter filter = new UpstreamLoadBalancerFilter(loadBalancer());
+
+    @Test
+    void filter_sendsMessagesOfAConversationToOneInstance() {
+        Map<String, Set<String>> hosts = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            String conversationId = "c-" + (i % 10);
+            String host = route("/api/v1/chat/messages?conversationId=" + conversationId,
+                    "instances://chat-service/chat/messages?conversationId=" + conversationId);
+            hosts.computeIfAbsent(conversationId, id -> new HashSet<>()).add(host);
+        }
+
+        assertThat(hosts.values()).allSatisfy(conversationHosts -> assertThat(conversationHosts).hasSize(1));
+        assertThat(hosts.values().stream().flatMap(Set::stream).distinct().count()).isGreaterThan(1);
+    }
+
+    // Runs the request through the filter, as StripPrefix left it, and returns the instance it was sent to
+    private String route(String clientPath, String routedUrl) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(clientPath));
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route);
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, URI.create(routedUrl));
+
+        filter.filter(exchange, routed -> Mono.empty()).block();
+        URI resolved = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        return resolved.getHost();
+    }
+
+    private static UpstreamLoadBalancer loadBalancer() {
+        LoadBalancerProperties properties = new LoadBalancerProperties();
+        properties.setServices(Map.of("chat-service", IntStream.range(0, 3)
+                .mapToObj(i -> URI.create("http://chat-" + i + ":8085"))
+                .toList()));
+        return new UpstreamLoadBalancer(properties, new SimpleMeterRegistry());
+    }
+}
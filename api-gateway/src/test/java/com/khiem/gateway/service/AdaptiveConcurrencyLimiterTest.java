@@ -0,0 +1,53 @@
+package com.khiem.gateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+    private static final long MILLIS = 1_000_000;
+
+    @Test
+    void tryAcquire_rejectsOverLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 2.0, 0.2, 100);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+
+        limiter.release();
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void onSample_shrinksLimit_whenLatencyGrows() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 4, 500, 2.0, 0.2, 100);
+        for (int i = 0; i < 200; i++)
+            limiter.onSample(10 * MILLIS, 100, false);
+        int steadyLimit = limiter.getLimit();
+
+        for (int i = 0; i < 20; i++)
+            limiter.onSample(200 * MILLIS, steadyLimit, false);
+
+        assertThat(limiter.getLimit()).isLessThan(steadyLimit);
+    }
+
+    @Test
+    void onSample_shrinksLimit_onDrops_andNeverBelowMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(50, 4, 500, 2.0, 0.5, 100);
+        for (int i = 0; i < 100; i++)
+            limiter.onSample(10 * MILLIS, 50, true);
+
+        assertThat(limiter.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void onSample_doesNotGrow_whenRouteIsMostlyIdle() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 4, 500, 2.0, 0.2, 100);
+        for (int i = 0; i < 100; i++)
+            limiter.onSample(10 * MILLIS, 1, false);
+
+        assertThat(limiter.getLimit()).isEqualTo(20);
+    }
+}
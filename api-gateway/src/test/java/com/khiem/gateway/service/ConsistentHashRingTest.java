@@ -0,0 +1,60 @@
+package com.khiem.gateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashRingTest {
+
+    @Test
+    void choose_keepsKeyOnSameInstance() {
+        ConsistentHashRing ring = new ConsistentHashRing(instances(4), 160);
+
+        UpstreamInstance first = ring.choose("conversation-42", 1.25, 0).instance();
+
+        for (int i = 0; i < 10; i++)
+            assertThat(ring.choose("conversation-42", 1.25, 0).instance()).isSameAs(first);
+    }
+
+    @Test
+    void choose_movesFewKeysWhenAnInstanceIsAdded() {
+        List<UpstreamInstance> instances = instances(5);
+        ConsistentHashRing before = new ConsistentHashRing(instances.subList(0, 4), 160);
+        ConsistentHashRing after = new ConsistentHashRing(instances, 160);
+
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String key = "conversation-" + i;
+            if (!before.choose(key, 1.25, 0).instance().getUri().equals(after.choose(key, 1.25, 0).instance().getUri()))
+                moved++;
+        }
+
+        // Ideally 1/5 of the keys, all of them to the new instance
+        assertThat(moved).isBetween(1_500, 2_500);
+    }
+
+    @Test
+    void choose_spillsPastOverloadedOwner() {
+        List<UpstreamInstance> instances = instances(4);
+        ConsistentHashRing ring = new ConsistentHashRing(instances, 160);
+        UpstreamInstance owner = ring.choose("conversation-42", 1.25, 0).instance();
+
+        for (int i = 0; i < 10; i++)
+            owner.begin();
+        ConsistentHashRing.Choice choice = ring.choose("conversation-42", 1.25, 0);
+
+        assertThat(choice.instance()).isNotSameAs(owner);
+        assertThat(choice.spilled()).isTrue();
+    }
+
+    private static List<UpstreamInstance> instances(int count) {
+        List<UpstreamInstance> instances = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            instances.add(new UpstreamInstance("chat-service", URI.create("http://chat-" + i + ":8085"), 0));
+        return instances;
+    }
+}
@@ -0,0 +1,35 @@
+package com.khiem.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgeBudgetTest {
+
+    @Test
+    void tryWithdraw_allowsOneHedgePerTenRequests() {
+        HedgeBudget budget = new HedgeBudget(new SimpleMeterRegistry(), 0.1, 100);
+
+        for (int i = 0; i < 9; i++)
+            budget.deposit();
+        assertThat(budget.tryWithdraw()).isFalse();
+
+        budget.deposit();
+        assertThat(budget.tryWithdraw()).isTrue();
+        assertThat(budget.tryWithdraw()).isFalse();
+    }
+
+    @Test
+    void deposit_isCappedAtMaxTokens() {
+        HedgeBudget budget = new HedgeBudget(new SimpleMeterRegistry(), 0.5, 2);
+
+        for (int i = 0; i < 100; i++)
+            budget.deposit();
+
+        assertThat(budget.getTokens()).isEqualTo(2.0);
+        assertThat(budget.tryWithdraw()).isTrue();
+        assertThat(budget.tryWithdraw()).isTrue();
+        assertThat(budget.tryWithdraw()).isFalse();
+    }
+}
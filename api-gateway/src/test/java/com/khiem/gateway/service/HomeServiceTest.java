@@ -0,0 +1,73 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.configuration.LoadBalancerProperties;
+import com.khiem.gateway.dto.response.HomeResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HomeServiceTest {
+    private DisposableServer postService;
+    private DisposableServer profileService;
+    private DisposableServer chatService;
+    private HomeService homeService;
+
+    @BeforeEach
+    void setUp() {
+        postService = HttpServer.create().host("localhost").port(0)
+                .route(routes -> routes.get("/post/", (request, response) -> response
+                        .sendString(Mono.just("{\"code\":1000,\"result\":{\"data\":[\"" +
+                                request.requestHeaders().get(HttpHeaders.AUTHORIZATION) + "\"]}}"))))
+                .bindNow();
+        profileService = HttpServer.create().host("localhost").port(0)
+                .route(routes -> routes.get("/profile/users/my-profile", (request, response) -> response
+                        .sendString(Mono.just("{\"code\":1000,\"result\":{}}").delayElement(Duration.ofSeconds(2)))))
+                .bindNow();
+        chatService = HttpServer.create().host("localhost").port(0)
+                .route(routes -> routes.get("/chat/conversations/my-conversations", (request, response) -> response
+                        .status(500)
+                        .sendString(Mono.just("{\"code\":9999}"))))
+                .bindNow();
+
+        LoadBalancerProperties properties = new LoadBalancerProperties();
+        properties.setServices(Map.of(
+                "post-service", List.of(URI.create("http://localhost:" + postService.port())),
+                "profile-service", List.of(URI.create("http://localhost:" + profileService.port())),
+                "chat-service", List.of(URI.create("http://localhost:" + chatService.port()))));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        homeService = new HomeService(WebClient.builder(), new UpstreamLoadBalancer(properties, meterRegistry),
+                meterRegistry, Duration.ofSeconds(1), Duration.ofMillis(200), Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        postService.disposeNow();
+        profileService.disposeNow();
+        chatService.disposeNow();
+    }
+
+    @Test
+    void home_returnsPartialResult_whenPartsFailOrTimeOut() {
+        long start = System.nanoTime();
+        HomeResponse home = homeService.home("Bearer token", "context", 1, 10).block();
+
+        assertThat(home.getFeed().get("data").get(0).asText()).isEqualTo("Bearer token");
+        assertThat(home.getProfile()).isNull();
+        assertThat(home.getConversations()).isNull();
+        assertThat(home.getUnavailable()).containsExactly(HomeService.PROFILE, HomeService.CONVERSATIONS);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+    }
+}
@@ -0,0 +1,44 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.dto.VerifiedToken;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The services check the header with their own IdentityContextFilter, which cannot run here, so the signer's
+ * output is pinned to the headers post-service's IdentityContextFilterTest expects to accept or reject.
+ */
+class IdentityContextSignerTest {
+    static final String SECRET = "identity-context-test-secret";
+    // user-1 with scope "ROLE_USER CREATE_POST", expiring 2100-01-01
+    static final String VALID = "dXNlci0xCjQxMDI0NDQ4MDAKUk9MRV9VU0VSIENSRUFURV9QT1NU.8Xsjf4iSQJ4No-2A7aMTliwdB2y3ufmyQ5BwYbfsq-w";
+    // user-1 with scope "ROLE_USER", expired 2023-11-14
+    static final String EXPIRED = "dXNlci0xCjE3MDAwMDAwMDAKUk9MRV9VU0VS.R7MCyTEbCrzcvgOltXXkVLmUsNBOE3sOGQ1QVBE8Oz4";
+
+    private final IdentityContextSigner signer = new IdentityContextSigner(SECRET);
+
+    @Test
+    void sign_producesTheHeadersTheServicesVerify() {
+        assertThat(signer.sign(token("ROLE_USER CREATE_POST", 4102444800L))).isEqualTo(VALID);
+        assertThat(signer.sign(token("ROLE_USER", 1700000000L))).isEqualTo(EXPIRED);
+    }
+
+    @Test
+    void sign_givesTheSameHeaderOnEveryThread() {
+        String signed = CompletableFuture.supplyAsync(() -> signer.sign(token("ROLE_USER CREATE_POST", 4102444800L))).join();
+
+        assertThat(signed).isEqualTo(signer.sign(token("ROLE_USER CREATE_POST", 4102444800L))).isEqualTo(VALID);
+    }
+
+    private static VerifiedToken token(String scope, long expiresAt) {
+        return VerifiedToken.builder()
+                .subject("user-1")
+                .scope(scope)
+                .expiresAt(Instant.ofEpochSecond(expiresAt))
+                .build();
+    }
+}
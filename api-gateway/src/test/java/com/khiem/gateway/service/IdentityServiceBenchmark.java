@@ -0,0 +1,138 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.dto.VerifiedToken;
+import com.khiem.gateway.repository.IdentityClient;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.support.WebClientAdapter;
+import org.springframework.web.service.invoker.HttpServiceProxyFactory;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the latency of authenticating one request with local JWT verification against remote
+ * introspection, with and without the pushed revocation feed. identity-service is replaced by an in-JVM stub so only the gateway side and one
+ * loopback hop are measured. A max TTL of 0 disables the introspection cache so every call that needs
+ * identity-service pays the hop. SampleTime mode reports p50/p99 per combination.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.khiem.gateway.service.IdentityServiceBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdentityServiceBenchmark {
+    static final String SIGNER_KEY = "1TjXchw5FloESb63Kc+DFhTARvpWL4jUGCwfGWxuG5SIf/1y/LgJxHnMqaF6A/ij";
+    static final String INTROSPECT_VALID = "{\"code\":1000,\"result\":{\"valid\":true}}";
+
+    // remote: introspect only, local: verify locally then introspect for revocation, feed: verify locally
+    // and check revocations pushed by identity-service
+    @Param({"remote", "local", "feed"})
+    String mode;
+
+    @Param({"0", "30"})
+    long introspectionCacheMaxTtl;
+
+    DisposableServer identityStub;
+    IdentityService identityService;
+    String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        identityStub = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .route(routes -> routes.post("/identity/auth/introspect", (request, response) -> response
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .sendString(Mono.just(INTROSPECT_VALID))))
+                .bindNow();
+
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + identityStub.port() + "/identity")
+                .build();
+        IdentityClient identityClient = HttpServiceProxyFactory
+                .builderFor(WebClientAdapter.create(webClient)).build()
+                .createClient(IdentityClient.class);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RevokedTokenStore revokedTokenStore = new RevokedTokenStore(meterRegistry, 3600);
+        revokedTokenStore.markCurrent();
+        identityService = new IdentityService(identityClient, new JwtVerifier(SIGNER_KEY),
+                revokedTokenStore, meterRegistry);
+        ReflectionTestUtils.setField(identityService, "localVerification", !mode.equals("remote"));
+        ReflectionTestUtils.setField(identityService, "revocationFeedEnabled", mode.equals("feed"));
+        ReflectionTestUtils.setField(identityService, "introspectionCacheMaxTtl", introspectionCacheMaxTtl);
+        ReflectionTestUtils.setField(identityService, "introspectionCacheMaxEntries", 1000L);
+        ReflectionTestUtils.setField(identityService, "negativeCacheTtl", 300L);
+        ReflectionTestUtils.setField(identityService, "negativeCacheMaxEntries", 1000L);
+        identityService.init();
+
+        token = signToken();
+    }
+
+    @TearDown
+    public void tearDown() {
+        identityStub.disposeNow();
+    }
+
+    @Benchmark
+    public VerifiedToken authenticate() {
+        return identityService.authenticate(token).block();
+    }
+
+    static String signToken() throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject("benchmark-user")
+                .issuer("bookvault.com")
+                .issueTime(new Date())
+                .expirationTime(Date.from(Instant.now().plus(1, ChronoUnit.HOURS)))
+                .jwtID(UUID.randomUUID().toString())
+                .claim("scope", "ROLE_USER")
+                .build();
+
+        SignedJWT signedJWT = new SignedJWT(new JWSHeader(JWSAlgorithm.HS512), claims);
+        signedJWT.sign(new MACSigner(SIGNER_KEY.getBytes()));
+        return signedJWT.serialize();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(IdentityServiceBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,39 @@
+package com.khiem.gateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencySketchTest {
+
+    @Test
+    void quantile_isWithinRelativeAccuracy() {
+        LatencySketch sketch = new LatencySketch();
+        // 1ms .. 100ms in 10µs steps
+        for (long micros = 1_000; micros <= 100_000; micros += 10)
+            sketch.record(micros * 1_000);
+
+        assertThat(LatencySketch.quantile(List.of(sketch), 0.5)).isCloseTo(50_500_000, within(50_500_000 * 0.02));
+        assertThat(LatencySketch.quantile(List.of(sketch), 0.99)).isCloseTo(99_010_000, within(99_010_000 * 0.02));
+    }
+
+    @Test
+    void quantile_mergesSketches_andResetClearsThem() {
+        LatencySketch fast = new LatencySketch();
+        LatencySketch slow = new LatencySketch();
+        for (int i = 0; i < 98; i++)
+            fast.record(1_000_000);
+        for (int i = 0; i < 2; i++)
+            slow.record(500_000_000);
+
+        assertThat(LatencySketch.quantile(List.of(fast, slow), 0.5)).isCloseTo(1_000_000, within(20_000.0));
+        assertThat(LatencySketch.quantile(List.of(fast, slow), 0.99)).isCloseTo(500_000_000, within(10_000_000.0));
+
+        slow.reset();
+        assertThat(slow.count()).isZero();
+        assertThat(LatencySketch.quantile(List.of(fast, slow), 0.99)).isCloseTo(1_000_000, within(20_000.0));
+    }
+}
@@ -0,0 +1,66 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.configuration.AdmissionProperties;
+import com.khiem.gateway.service.PriorityAdmission.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PriorityAdmissionTest {
+
+    @Test
+    void admit_queuesAboveLimitAndAdmitsByWeight() {
+        PriorityAdmission admission = admission(1, 10);
+        assertThat(admission.admit(Priority.NORMAL).block()).isTrue();
+
+        List<Priority> order = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            admission.admit(Priority.BULK).subscribe(admitted -> order.add(Priority.BULK));
+            admission.admit(Priority.CRITICAL).subscribe(admitted -> order.add(Priority.CRITICAL));
+        }
+
+        for (int i = 0; i < 5; i++)
+            admission.release();
+
+        // Weight 8 against 1: the four critical requests go first, then the oldest bulk one
+        assertThat(order).containsExactly(Priority.CRITICAL, Priority.CRITICAL, Priority.CRITICAL,
+                Priority.CRITICAL, Priority.BULK);
+    }
+
+    @Test
+    void admit_rejectsWhenClassQueueIsFull() {
+        PriorityAdmission admission = admission(1, 1);
+        assertThat(admission.admit(Priority.NORMAL).block()).isTrue();
+
+        admission.admit(Priority.BULK).subscribe();
+        assertThat(admission.admit(Priority.BULK).block()).isFalse();
+    }
+
+    @Test
+    void admit_givesUpAfterQueueTimeout() {
+        PriorityAdmission admission = admission(1, 10);
+        assertThat(admission.admit(Priority.NORMAL).block()).isTrue();
+
+        assertThat(admission.admit(Priority.BULK).block(Duration.ofSeconds(1))).isFalse();
+
+        admission.release();
+        assertThat(admission.admit(Priority.BULK).block()).isTrue();
+    }
+
+    private static PriorityAdmission admission(int maxInFlight, int queueCapacity) {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setMaxInFlight(maxInFlight);
+        properties.getClasses().put(Priority.CRITICAL,
+                new AdmissionProperties.PriorityClass(8, queueCapacity, Duration.ofSeconds(5)));
+        properties.getClasses().put(Priority.NORMAL,
+                new AdmissionProperties.PriorityClass(4, queueCapacity, Duration.ofSeconds(5)));
+        properties.getClasses().put(Priority.BULK,
+                new AdmissionProperties.PriorityClass(1, queueCapacity, Duration.ofMillis(50)));
+        return new PriorityAdmission(properties, new SimpleMeterRegistry());
+    }
+}
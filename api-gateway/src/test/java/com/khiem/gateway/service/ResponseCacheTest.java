@@ -0,0 +1,42 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.configuration.LoadBalancerProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheTest {
+    private final ResponseCache cache = new ResponseCache(WebClient.builder(),
+            new UpstreamLoadBalancer(new LoadBalancerProperties(), new SimpleMeterRegistry()), new SimpleMeterRegistry(),
+            1 << 20, 1 << 10);
+
+    @Test
+    void evict_removesThePathItsSubPathsAndItsParentCollection() {
+        store("/api/v1/books");
+        store("/api/v1/books?page=2");
+        store("/api/v1/books/1|Accept=[application/json]");
+        store("/api/v1/books/1/reviews");
+        store("/api/v1/books/12");
+        store("/api/v1/authors");
+
+        cache.evict("/api/v1/books/1");
+
+        assertThat(cache.get("/api/v1/books")).isNull();
+        assertThat(cache.get("/api/v1/books?page=2")).isNull();
+        assertThat(cache.get("/api/v1/books/1|Accept=[application/json]")).isNull();
+        assertThat(cache.get("/api/v1/books/1/reviews")).isNull();
+        assertThat(cache.get("/api/v1/books/12")).isNotNull();
+        assertThat(cache.get("/api/v1/authors")).isNotNull();
+    }
+
+    private void store(String key) {
+        cache.store(key, HttpStatus.OK, new HttpHeaders(), new byte[]{1}, null, new HttpHeaders(),
+                Duration.ofSeconds(30), Duration.ofSeconds(60));
+    }
+}
@@ -0,0 +1,46 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.service.ResponseCompressor.Encoding;
+import com.khiem.gateway.service.ResponseCompressor.Level;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCompressorTest {
+    private final ResponseCompressor compressor = new ResponseCompressor(new SimpleMeterRegistry(), 1 << 20, 0.7, 0.9);
+
+    @Test
+    void negotiate_ignoresRefusedEncodings() {
+        assertThat(compressor.negotiate(null)).isNull();
+        assertThat(compressor.negotiate("identity")).isNull();
+        assertThat(compressor.negotiate("gzip;q=0, deflate")).isNull();
+        assertThat(compressor.negotiate("deflate, gzip;q=0.5")).isEqualTo(Encoding.GZIP);
+        assertThat(compressor.negotiate("br;q=0, gzip")).isEqualTo(Encoding.GZIP);
+    }
+
+    @Test
+    void compress_gzipRoundTrips() throws Exception {
+        byte[] body = "{\"title\":\"load test\"}".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+        byte[] compressed = compressor.compress(body, Encoding.GZIP, Level.FAST);
+
+        assertThat(compressed.length).isLessThan(body.length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertThat(in.readAllBytes()).isEqualTo(body);
+        }
+    }
+
+    @Test
+    void cached_isKeptPerEncoding() {
+        byte[] gzip = {1, 2, 3};
+        compressor.cache("/books|\"abc\"", Encoding.GZIP, gzip);
+
+        assertThat(compressor.cached("/books|\"abc\"", Encoding.GZIP)).isSameAs(gzip);
+        assertThat(compressor.cached("/books|\"abc\"", Encoding.BR)).isNull();
+    }
+}
@@ -0,0 +1,46 @@
+package com.khiem.gateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryBudgetTest {
+
+    @Test
+    void tryAcquire_allowsRetriesUpToRatioOfSuccesses() {
+        RetryBudget budget = new RetryBudget(0.1, 0, Duration.ofSeconds(10), 10, () -> 0);
+
+        for (int i = 0; i < 19; i++)
+            budget.recordSuccess();
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isFalse();
+
+        budget.recordSuccess();
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void tryAcquire_keepsMinimumForQuietRoutes() {
+        RetryBudget budget = new RetryBudget(0.1, 1, Duration.ofSeconds(2), 2, () -> 0);
+
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void tryAcquire_forgetsSuccessesOutsideTheWindow() {
+        AtomicLong now = new AtomicLong();
+        RetryBudget budget = new RetryBudget(0.5, 0, Duration.ofSeconds(10), 10, now::get);
+
+        for (int i = 0; i < 10; i++)
+            budget.recordSuccess();
+        now.set(Duration.ofSeconds(11).toMillis());
+
+        assertThat(budget.tryAcquire()).isFalse();
+    }
+}
@@ -0,0 +1,49 @@
+package com.khiem.gateway.service;
+
+import com.khiem.event.dto.TokenRevokedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RevokedTokenConsumerTest {
+    private static final TopicPartition PARTITION = new TopicPartition("token-revoked-event", 0);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RevokedTokenStore store = new RevokedTokenStore(meterRegistry, 30);
+    private final RevokedTokenConsumer revokedTokenConsumer = new RevokedTokenConsumer(store, meterRegistry);
+    private final MockConsumer<String, Object> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+    @Test
+    void consume_trustsTheFeedOnlyWithNothingLeftUnread() {
+        consumer.assign(List.of(PARTITION));
+        consumer.updateEndOffsets(Map.of(PARTITION, 5L));
+
+        consumer.seek(PARTITION, 4);
+        revokedTokenConsumer.consumeTokenRevokedEvent(revocation("a"), consumer);
+        assertThat(store.isRevoked("a")).isTrue();
+        assertThat(store.isCurrent()).isFalse();
+
+        consumer.seek(PARTITION, 5);
+        revokedTokenConsumer.consumeTokenRevokedEvent(revocation("b"), consumer);
+        assertThat(store.isCurrent()).isTrue();
+
+        // New revocations were published, the tokens they name must not pass on a stale set
+        consumer.updateEndOffsets(Map.of(PARTITION, 7L));
+        revokedTokenConsumer.consumeTokenRevokedEvent(revocation("c"), consumer);
+        assertThat(store.isCurrent()).isFalse();
+    }
+
+    private static TokenRevokedEvent revocation(String jwtId) {
+        return new TokenRevokedEvent(jwtId, Date.from(Instant.now().plus(1, ChronoUnit.HOURS)));
+    }
+}
@@ -0,0 +1,29 @@
+package com.khiem.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RevokedTokenStoreTest {
+
+    @Test
+    void isCurrent_onlyAfterTheFeedConfirmedItIsCaughtUp() {
+        RevokedTokenStore store = new RevokedTokenStore(new SimpleMeterRegistry(), 30);
+
+        assertThat(store.isCurrent()).isFalse();
+
+        store.markCurrent();
+        assertThat(store.isCurrent()).isTrue();
+    }
+
+    @Test
+    void isCurrent_expiresWhenConfirmationsStop() throws InterruptedException {
+        RevokedTokenStore store = new RevokedTokenStore(new SimpleMeterRegistry(), 0);
+
+        store.markCurrent();
+        Thread.sleep(1);
+
+        assertThat(store.isCurrent()).isFalse();
+    }
+}
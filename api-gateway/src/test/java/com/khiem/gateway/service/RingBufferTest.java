@@ -0,0 +1,68 @@
+package com.khiem.gateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RingBufferTest {
+
+    @Test
+    void offer_refusesElements_whenFull() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+
+        for (int i = 0; i < 4; i++)
+            assertThat(buffer.offer(i)).isTrue();
+        assertThat(buffer.offer(4)).isFalse();
+
+        assertThat(buffer.poll()).isEqualTo(0);
+        assertThat(buffer.offer(4)).isTrue();
+        assertThat(buffer.size()).isEqualTo(4);
+    }
+
+    @Test
+    void poll_receivesEveryElementOnce_fromConcurrentProducers() throws InterruptedException {
+        RingBuffer<long[]> buffer = new RingBuffer<>(1024);
+        int producers = 4;
+        int perProducer = 50_000;
+        CountDownLatch started = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(new long[]{producer, i}))
+                        Thread.onSpinWait();
+                }
+            }));
+        }
+
+        started.countDown();
+        long[] lastSeen = {-1, -1, -1, -1};
+        int received = 0;
+        while (received < producers * perProducer) {
+            long[] element = buffer.poll();
+            if (element == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            // Each producer's elements arrive in the order they were offered
+            assertThat(element[1]).isEqualTo(lastSeen[(int) element[0]] + 1);
+            lastSeen[(int) element[0]] = element[1];
+            received++;
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+        assertThat(buffer.poll()).isNull();
+    }
+}
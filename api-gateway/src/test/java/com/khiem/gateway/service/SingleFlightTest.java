@@ -0,0 +1,79 @@
+package com.khiem.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+    private SimpleMeterRegistry meterRegistry;
+    private SingleFlight<String, String> singleFlight;
+    private AtomicInteger subscriptions;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new SingleFlight<>(meterRegistry, "test");
+        subscriptions = new AtomicInteger();
+    }
+
+    @Test
+    void concurrentCallers_shareOneCall() {
+        Sinks.One<String> upstream = Sinks.one();
+        Mono<String> call = upstream.asMono().doOnSubscribe(s -> subscriptions.incrementAndGet());
+
+        StepVerifier first = StepVerifier.create(singleFlight.execute("key", () -> call))
+                .expectNext("valid").expectComplete().verifyLater();
+        StepVerifier second = StepVerifier.create(singleFlight.execute("key", () -> call))
+                .expectNext("valid").expectComplete().verifyLater();
+
+        upstream.tryEmitValue("valid");
+        first.verify();
+        second.verify();
+
+        assertThat(subscriptions.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.singleflight.collapsed").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void error_reachesEveryCaller_andIsNotRemembered() {
+        Sinks.One<String> upstream = Sinks.one();
+        Mono<String> failing = upstream.asMono().doOnSubscribe(s -> subscriptions.incrementAndGet());
+
+        StepVerifier first = StepVerifier.create(singleFlight.execute("key", () -> failing))
+                .expectError(IllegalStateException.class).verifyLater();
+        StepVerifier second = StepVerifier.create(singleFlight.execute("key", () -> failing))
+                .expectError(IllegalStateException.class).verifyLater();
+
+        upstream.tryEmitError(new IllegalStateException("identity-service down"));
+        first.verify();
+        second.verify();
+
+        StepVerifier.create(singleFlight.execute("key", () -> Mono.just("valid")))
+                .expectNext("valid")
+                .verifyComplete();
+        assertThat(subscriptions.get()).isEqualTo(1);
+    }
+
+    @Test
+    void upstreamCancelled_onlyWhenEveryCallerCancels() {
+        AtomicInteger cancellations = new AtomicInteger();
+        Mono<String> never = Mono.<String>never().doOnCancel(cancellations::incrementAndGet);
+
+        var first = singleFlight.execute("key", () -> never).subscribe();
+        var second = singleFlight.execute("key", () -> never).subscribe();
+
+        first.dispose();
+        assertThat(cancellations.get()).isZero();
+
+        second.dispose();
+        assertThat(cancellations.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.singleflight.in-flight").gauge().value()).isZero();
+    }
+}
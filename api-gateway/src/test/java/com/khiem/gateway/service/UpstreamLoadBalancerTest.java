@@ -0,0 +1,106 @@
+package com.khiem.gateway.service;
+
+import com.khiem.gateway.configuration.LoadBalancerProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamLoadBalancerTest {
+    private DisposableServer fast;
+    private DisposableServer slow;
+    private DisposableServer failing;
+    private UpstreamLoadBalancer loadBalancer;
+    private final WebClient webClient = WebClient.create();
+
+    @BeforeEach
+    void setUp() {
+        fast = stub("fast", Duration.ZERO, 200);
+        slow = stub("slow", Duration.ofMillis(50), 200);
+        failing = stub("failing", Duration.ZERO, 500);
+
+        LoadBalancerProperties properties = new LoadBalancerProperties();
+        properties.getEjection().setConsecutiveFailures(3);
+        properties.setServices(Map.of("post-service", List.of(
+                URI.create("http://localhost:" + fast.port()),
+                URI.create("http://localhost:" + slow.port()),
+                URI.create("http://localhost:" + failing.port()))));
+        loadBalancer = new UpstreamLoadBalancer(properties, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        fast.disposeNow();
+        slow.disposeNow();
+        failing.disposeNow();
+    }
+
+    @Test
+    void choose_prefersFasterInstances_andEjectsFailingOnes() {
+        Map<String, Integer> answers = new HashMap<>();
+        for (int i = 0; i < 150; i++) {
+            UpstreamInstance instance = loadBalancer.choose("post-service");
+            URI url = UpstreamLoadBalancer.resolve(URI.create("instances://post-service/post/?page=1"), instance);
+
+            long start = System.nanoTime();
+            ResponseEntity<String> response = webClient.get().uri(url)
+                    .exchangeToMono(clientResponse -> clientResponse.toEntity(String.class))
+                    .block();
+            loadBalancer.complete(instance, System.nanoTime() - start, response.getStatusCode().is5xxServerError());
+            answers.merge(response.getBody(), 1, Integer::sum);
+        }
+
+        assertThat(answers.getOrDefault("failing", 0)).isLessThanOrEqualTo(3);
+        assertThat(answers.get("fast")).isGreaterThan(answers.get("slow"));
+    }
+
+    @Test
+    void choose_returnsNull_forUnknownService() {
+        assertThat(loadBalancer.choose("chat-service")).isNull();
+    }
+
+    @Test
+    void cost_startsAtTheInitialRtt_andCountsFailuresAsSlow() {
+        long decay = Duration.ofSeconds(10).toNanos();
+        UpstreamInstance instance = new UpstreamInstance("post-service", URI.create("http://10.0.0.7:8083"),
+                Duration.ofMillis(100).toNanos());
+        assertThat(instance.getEwmaMillis()).isEqualTo(100);
+
+        instance.onSuccess(Duration.ofMillis(2).toNanos(), 1, decay);
+        assertThat(instance.getEwmaMillis()).isEqualTo(2);
+
+        instance.onFailure(Duration.ofMillis(1).toNanos(), Duration.ofSeconds(1).toNanos(), 2, decay);
+        assertThat(instance.getEwmaMillis()).isEqualTo(1000);
+    }
+
+    @Test
+    void resolve_keepsPathAndQuery() {
+        UpstreamInstance instance = new UpstreamInstance("post-service", URI.create("http://10.0.0.7:8083"), 0);
+
+        URI resolved = UpstreamLoadBalancer.resolve(URI.create("instances://post-service/post/a%20b?page=1"), instance);
+
+        assertThat(resolved).hasToString("http://10.0.0.7:8083/post/a%20b?page=1");
+    }
+
+    private static DisposableServer stub(String name, Duration delay, int status) {
+        return HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .handle((request, response) -> response.status(status)
+                        .sendString(Mono.just(name).delayElement(delay)))
+                .bindNow();
+    }
+}
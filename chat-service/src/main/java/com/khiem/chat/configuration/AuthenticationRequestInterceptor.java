@@ -19,5 +19,9 @@ public class AuthenticationRequestInterceptor implements RequestInterceptor {
 
         log.info("Header: {}", authHeader);
         if (StringUtils.hasText(authHeader)) template.header("Authorization", authHeader);
+
+        // Calls to other services stay authenticated by the gateway's identity context while it is valid
+        var identityContext = servletRequestAttributes.getRequest().getHeader(IdentityContextFilter.HEADER);
+        if (StringUtils.hasText(identityContext)) template.header(IdentityContextFilter.HEADER, identityContext);
     }
 }
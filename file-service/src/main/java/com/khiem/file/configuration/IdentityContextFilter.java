@@ -0,0 +1,108 @@
+package com.khiem.file.configuration;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Authenticates requests from the signed X-Identity-Context header the api-gateway adds after validating
+ * the caller's JWT: base64url(subject \n expiry epoch seconds \n scope) . base64url(HMAC-SHA256).
+ *
+ * <p>Requests without a valid header are left alone and go through the JWT decoder as before.
+ */
+@Slf4j
+public class IdentityContextFilter extends OncePerRequestFilter {
+    public static final String HEADER = "X-Identity-Context";
+
+    // Request attribute set when the header authenticated the request, the bearer token is then not decoded
+    public static final String AUTHENTICATED_ATTRIBUTE = IdentityContextFilter.class.getName() + ".authenticated";
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    // Mac is not thread safe, each request thread keeps one initialised with the key
+    private final ThreadLocal<Mac> macs;
+
+    public IdentityContextFilter(String secret) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String header = request.getHeader(HEADER);
+        if (header != null) {
+            Authentication authentication = authenticate(header);
+            if (authentication != null) {
+                SecurityContext context = SecurityContextHolder.createEmptyContext();
+                context.setAuthentication(authentication);
+                SecurityContextHolder.setContext(context);
+                request.setAttribute(AUTHENTICATED_ATTRIBUTE, Boolean.TRUE);
+            } else {
+                log.debug("Ignoring invalid or expired identity context");
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    private Authentication authenticate(String header) {
+        int separator = header.indexOf('.');
+        if (separator <= 0)
+            return null;
+
+        try {
+            String encodedPayload = header.substring(0, separator);
+            byte[] signature = Base64.getUrlDecoder().decode(header.substring(separator + 1));
+            if (!MessageDigest.isEqual(sign(encodedPayload), signature))
+                return null;
+
+            String[] claims = new String(Base64.getUrlDecoder().decode(encodedPayload), StandardCharsets.UTF_8)
+                    .split("\n", 3);
+            if (claims.length != 3 || Instant.now().getEpochSecond() >= Long.parseLong(claims[1]))
+                return null;
+
+            List<SimpleGrantedAuthority> authorities = Arrays.stream(claims[2].split(" "))
+                    .filter(scope -> !scope.isEmpty())
+                    .map(SimpleGrantedAuthority::new)
+                    .toList();
+            return UsernamePasswordAuthenticationToken.authenticated(claims[0], null, authorities);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(String encodedPayload) {
+        return macs.get().doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.khiem.event.dto;
+
+import java.util.Date;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+// Published when a token is invalidated so the gateway can reject it without calling identity-service
+public class TokenRevokedEvent {
+    String jwtId;
+    Date expiryTime;
+}
@@ -8,11 +8,13 @@ import java.util.StringJoiner;
 import java.util.UUID;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import com.khiem.event.dto.TokenRevokedEvent;
 import com.khiem.identity.dto.request.AuthenticationRequest;
 import com.khiem.identity.dto.request.IntrospectRequest;
 import com.khiem.identity.dto.request.LogoutRequest;
@@ -38,6 +40,7 @@ import lombok.extern.slf4j.Slf4j;
 public class AuthenticationService {
     private final UserRepository userRepository;
     private final InvalidatedTokenRepository invalidatedTokenRepository;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
 
     @Value("${jwt.signerKey}")
     protected String SIGNER_KEY;
@@ -48,9 +51,17 @@ public class AuthenticationService {
     @Value("${jwt.refreshable-duration}")
     protected long REFRESHABLE_DURATION;
 
-    public AuthenticationService(UserRepository userRepository, InvalidatedTokenRepository invalidatedTokenRepository) {
+    // Same key and default as the gateway's consumer
+    @Value("${app.auth.revocation-feed.topic:token-revoked-event}")
+    protected String TOKEN_REVOKED_TOPIC;
+
+    public AuthenticationService(
+            UserRepository userRepository,
+            InvalidatedTokenRepository invalidatedTokenRepository,
+            KafkaTemplate<String, Object> kafkaTemplate) {
         this.userRepository = userRepository;
         this.invalidatedTokenRepository = invalidatedTokenRepository;
+        this.kafkaTemplate = kafkaTemplate;
     }
 
     public IntrospectResponse introspect(IntrospectRequest request) {
@@ -88,8 +99,7 @@ public class AuthenticationService {
             String jit = signToken.getJWTClaimsSet().getJWTID();
             Date expiryTime = signToken.getJWTClaimsSet().getExpirationTime();
 
-            invalidatedTokenRepository.save(
-                    InvalidatedToken.builder().id(jit).expiryTime(expiryTime).build());
+            invalidate(jit, expiryTime);
         } catch (AppException e) {
             log.info("Token already expired or invalid");
         }
@@ -102,8 +112,7 @@ public class AuthenticationService {
         var userId = signedJWT.getJWTClaimsSet().getSubject();
 
         // Invalidate old token
-        invalidatedTokenRepository.save(
-                InvalidatedToken.builder().id(jit).expiryTime(expiryTime).build());
+        invalidate(jit, expiryTime);
 
         // Get user and generate new token
         var user = userRepository.findById(userId).orElseThrow(() -> new AppException(ErrorCode.UNAUTHENTICATED));
@@ -111,6 +120,17 @@ public class AuthenticationService {
         return AuthenticationResponse.builder().token(generateToken(user)).build();
     }
 
+    private void invalidate(String jit, Date expiryTime) {
+        invalidatedTokenRepository.save(
+                InvalidatedToken.builder().id(jit).expiryTime(expiryTime).build());
+
+        // Let gateway nodes reject the token locally until it expires
+        kafkaTemplate.send(
+                TOKEN_REVOKED_TOPIC,
+                jit,
+                TokenRevokedEvent.builder().jwtId(jit).expiryTime(expiryTime).build());
+    }
+
     private String generateToken(User user) {
         JWSHeader header = new JWSHeader(JWSAlgorithm.HS512);
 
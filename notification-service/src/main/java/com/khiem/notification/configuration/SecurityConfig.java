@@ -1,5 +1,6 @@
 package com.khiem.notification.configuration;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -9,6 +10,9 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
 import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenResolver;
+import org.springframework.security.oauth2.server.resource.web.DefaultBearerTokenResolver;
+import org.springframework.security.oauth2.server.resource.web.authentication.BearerTokenAuthenticationFilter;
 import org.springframework.security.web.SecurityFilterChain;
 
 @Configuration
@@ -19,9 +23,12 @@ public class SecurityConfig {
     private static final String[] PUBLIC_ENDPOINTS = {"/email/send"};
 
     private final CustomJwtDecoder customJwtDecoder;
+    private final String identityContextSecret;
 
-    public SecurityConfig(CustomJwtDecoder customJwtDecoder) {
+    public SecurityConfig(CustomJwtDecoder customJwtDecoder,
+                          @Value("${app.identity-context.secret}") String identityContextSecret) {
         this.customJwtDecoder = customJwtDecoder;
+        this.identityContextSecret = identityContextSecret;
     }
 
     @Bean
@@ -31,7 +38,11 @@ public class SecurityConfig {
                 .anyRequest()
                 .authenticated());
 
-        httpSecurity.oauth2ResourceServer(oauth2 -> oauth2.jwt(jwtConfigurer -> jwtConfigurer
+        // Requests signed by the gateway are authenticated from X-Identity-Context, the JWT is only decoded otherwise
+        httpSecurity.addFilterBefore(new IdentityContextFilter(identityContextSecret),
+                BearerTokenAuthenticationFilter.class);
+        httpSecurity.oauth2ResourceServer(oauth2 -> oauth2.bearerTokenResolver(bearerTokenResolver())
+                .jwt(jwtConfigurer -> jwtConfigurer
                         .decoder(customJwtDecoder)
                         .jwtAuthenticationConverter(jwtAuthenticationConverter()))
                 .authenticationEntryPoint(new JwtAuthenticationEntryPoint()));
@@ -40,6 +51,13 @@ public class SecurityConfig {
         return httpSecurity.build();
     }
 
+    private BearerTokenResolver bearerTokenResolver() {
+        DefaultBearerTokenResolver bearerTokenResolver = new DefaultBearerTokenResolver();
+        return request -> request.getAttribute(IdentityContextFilter.AUTHENTICATED_ATTRIBUTE) != null
+                ? null
+                : bearerTokenResolver.resolve(request);
+    }
+
     @Bean
     JwtAuthenticationConverter jwtAuthenticationConverter() {
         JwtGrantedAuthoritiesConverter jwtGrantedAuthoritiesConverter = new JwtGrantedAuthoritiesConverter();
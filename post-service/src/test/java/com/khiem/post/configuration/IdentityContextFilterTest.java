@@ -0,0 +1,126 @@
+package com.khiem.post.configuration;
+
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdentityContextFilterTest {
+    private static final String SECRET = "identity-context-test-secret";
+
+    // Headers api-gateway's IdentityContextSigner produces with SECRET, pinned in its IdentityContextSignerTest
+    private static final String GATEWAY_SIGNED = "dXNlci0xCjQxMDI0NDQ4MDAKUk9MRV9VU0VSIENSRUFURV9QT1NU.8Xsjf4iSQJ4No-2A7aMTliwdB2y3ufmyQ5BwYbfsq-w";
+    private static final String GATEWAY_SIGNED_EXPIRED = "dXNlci0xCjE3MDAwMDAwMDAKUk9MRV9VU0VS.R7MCyTEbCrzcvgOltXXkVLmUsNBOE3sOGQ1QVBE8Oz4";
+
+    private final IdentityContextFilter filter = new IdentityContextFilter(SECRET);
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void validHeader_authenticatesWithSubjectAndScopes() throws Exception {
+        MockHttpServletRequest request = request(sign(SECRET, "user-1\n" + Instant.now().plusSeconds(60).getEpochSecond()
+                + "\nROLE_USER CREATE_POST"));
+        Authentication[] seen = new Authentication[1];
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest req, ServletResponse res) {
+                seen[0] = SecurityContextHolder.getContext().getAuthentication();
+            }
+        });
+
+        assertThat(seen[0].getName()).isEqualTo("user-1");
+        assertThat(seen[0].getAuthorities()).extracting("authority").containsExactly("ROLE_USER", "CREATE_POST");
+        assertThat(request.getAttribute(IdentityContextFilter.AUTHENTICATED_ATTRIBUTE)).isEqualTo(Boolean.TRUE);
+    }
+
+    @Test
+    void headerSignedWithAnotherKey_isIgnored() throws Exception {
+        MockHttpServletRequest request = request(sign("other-secret", "user-1\n"
+                + Instant.now().plusSeconds(60).getEpochSecond() + "\nROLE_ADMIN"));
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        assertThat(request.getAttribute(IdentityContextFilter.AUTHENTICATED_ATTRIBUTE)).isNull();
+    }
+
+    @Test
+    void expiredHeader_isIgnored() throws Exception {
+        MockHttpServletRequest request = request(sign(SECRET, "user-1\n"
+                + Instant.now().minusSeconds(1).getEpochSecond() + "\nROLE_USER"));
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        assertThat(request.getAttribute(IdentityContextFilter.AUTHENTICATED_ATTRIBUTE)).isNull();
+    }
+
+    @Test
+    void headerSignedByTheGateway_authenticates() throws Exception {
+        MockHttpServletRequest request = request(GATEWAY_SIGNED);
+
+        assertThat(authenticationSeenDownstream(request).getName()).isEqualTo("user-1");
+        assertThat(request.getAttribute(IdentityContextFilter.AUTHENTICATED_ATTRIBUTE)).isEqualTo(Boolean.TRUE);
+    }
+
+    @Test
+    void tamperedOrExpiredGatewayHeader_fallsThroughToTheJwtDecoder() throws Exception {
+        // The gateway's signature over user-1's scopes, with ROLE_ADMIN swapped into the payload
+        String signature = GATEWAY_SIGNED.substring(GATEWAY_SIGNED.indexOf('.'));
+        String tampered = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("user-1\n4102444800\nROLE_ADMIN CREATE_POST".getBytes(StandardCharsets.UTF_8)) + signature;
+
+        for (String header : new String[]{tampered, GATEWAY_SIGNED_EXPIRED}) {
+            MockHttpServletRequest request = request(header);
+
+            // The chain still runs, and without the attribute the bearer token is decoded
+            assertThat(authenticationSeenDownstream(request)).isNull();
+            assertThat(request.getAttribute(IdentityContextFilter.AUTHENTICATED_ATTRIBUTE)).isNull();
+        }
+    }
+
+    private Authentication authenticationSeenDownstream(MockHttpServletRequest request) throws Exception {
+        Authentication[] seen = new Authentication[1];
+        boolean[] called = new boolean[1];
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest req, ServletResponse res) {
+                called[0] = true;
+                seen[0] = SecurityContextHolder.getContext().getAuthentication();
+            }
+        });
+        assertThat(called[0]).isTrue();
+        return seen[0];
+    }
+
+    private static MockHttpServletRequest request(String identityContext) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/my-posts");
+        request.addHeader(IdentityContextFilter.HEADER, identityContext);
+        return request;
+    }
+
+    // Same format api-gateway's IdentityContextSigner produces
+    private static String sign(String secret, String payload) throws Exception {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String encodedPayload = encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return encodedPayload + "." + encoder.encodeToString(mac.doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII)));
+    }
+}